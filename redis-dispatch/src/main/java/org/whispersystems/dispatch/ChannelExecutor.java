@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a fixed set of single-threaded lanes, with every channel pinned to one lane. Tasks for a channel run
+ * one at a time and in submission order, and a slow channel can only delay the channels that share its lane.
+ * <p/>
+ * Each lane accepts at most {@code laneCapacity} queued messages; {@link #executeMessage(String, Runnable)} refuses
+ * anything beyond that so the caller can apply its own overflow policy. Subscription lifecycle events are never
+ * refused, since losing one would leave a channel's state inconsistent.
+ */
+public class ChannelExecutor {
+
+  private final ThreadPoolExecutor[] lanes;
+  private final int                  laneCapacity;
+
+  public ChannelExecutor(String name, int laneCount, int laneCapacity) {
+    this.lanes        = new ThreadPoolExecutor[laneCount];
+    this.laneCapacity = laneCapacity;
+
+    for (int i = 0; i < laneCount; i++) {
+      final String        laneName     = name + "-" + i;
+      final AtomicInteger threadNumber = new AtomicInteger();
+
+      lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, laneName + "-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * @return {@code false} if the channel's lane is full and the message was not queued
+   */
+  public boolean executeMessage(String channel, Runnable task) {
+    ThreadPoolExecutor lane = getLane(channel);
+
+    if (lane.getQueue().size() >= laneCapacity) {
+      return false;
+    }
+
+    lane.execute(task);
+    return true;
+  }
+
+  public void executeLifecycleEvent(String channel, Runnable task) {
+    getLane(channel).execute(task);
+  }
+
+  public int getQueuedTaskCount() {
+    int queued = 0;
+
+    for (ThreadPoolExecutor lane : lanes) {
+      queued += lane.getQueue().size();
+    }
+
+    return queued;
+  }
+
+  public void shutdown() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  private ThreadPoolExecutor getLane(String channel) {
+    return lanes[Math.floorMod(channel.hashCode(), lanes.length)];
+  }
+}
@@ -4,6 +4,9 @@
  */
 package org.whispersystems.dispatch;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.dispatch.io.RedisPubSubConnectionFactory;
@@ -11,30 +14,74 @@ import org.whispersystems.dispatch.redis.PubSubConnection;
 import org.whispersystems.dispatch.redis.PubSubReply;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class DispatchManager extends Thread {
 
   private final Logger                       logger        = LoggerFactory.getLogger(DispatchManager.class);
-  private final Executor                     executor      = Executors.newCachedThreadPool();
   private final Map<String, DispatchChannel> subscriptions = new ConcurrentHashMap<>();
 
+  private static final int DISPATCH_LANE_COUNT       = 16;
+  private static final int DISPATCH_LANE_CAPACITY    = 1024;
+  private static final int DEAD_LETTER_LANE_CAPACITY = 8192;
+
+  private final ChannelExecutor dispatchExecutor   = new ChannelExecutor("DispatchManager-dispatch", DISPATCH_LANE_COUNT, DISPATCH_LANE_CAPACITY);
+  private final ChannelExecutor deadLetterExecutor = new ChannelExecutor("DispatchManager-deadLetter", 1, DEAD_LETTER_LANE_CAPACITY);
+
+  // Resubscribing after a reconnect can't happen on the reader thread, which has to be free to read the replies
+  private final ExecutorService resubscribeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "DispatchManager-resubscribe");
+    thread.setDaemon(true);
+
+    return thread;
+  });
+
+  private final Meter overflowMeter;
+  private final Meter droppedMeter;
+
+  private static final int MAX_CHANNELS_PER_COMMAND = 1024;
+
+  // Subscription changes are queued in order and written by whichever caller holds the flush lock, so concurrent
+  // changes are coalesced into multi-channel commands and nobody waits on another caller's socket write.
+  private final Queue<SubscriptionChange> pendingSubscriptionChanges = new ConcurrentLinkedQueue<>();
+  private final Lock                      subscriptionFlushLock      = new ReentrantLock();
+
   private final Optional<DispatchChannel>    deadLetterChannel;
   private final RedisPubSubConnectionFactory redisPubSubConnectionFactory;
 
-  private          PubSubConnection pubSubConnection;
+  private volatile PubSubConnection pubSubConnection;
   private volatile boolean          running;
 
   public DispatchManager(RedisPubSubConnectionFactory redisPubSubConnectionFactory,
                          Optional<DispatchChannel> deadLetterChannel)
+  {
+    this(redisPubSubConnectionFactory, deadLetterChannel, new MetricRegistry());
+  }
+
+  public DispatchManager(RedisPubSubConnectionFactory redisPubSubConnectionFactory,
+                         Optional<DispatchChannel> deadLetterChannel,
+                         MetricRegistry metricRegistry)
   {
     this.redisPubSubConnectionFactory = redisPubSubConnectionFactory;
     this.deadLetterChannel            = deadLetterChannel;
+    this.overflowMeter                = metricRegistry.meter(name(DispatchManager.class, "overflow"));
+    this.droppedMeter                 = metricRegistry.meter(name(DispatchManager.class, "dropped" ));
+
+    metricRegistry.register(name(DispatchManager.class, "queued"), (Gauge<Integer>) dispatchExecutor::getQueuedTaskCount);
   }
 
   @Override
@@ -47,37 +94,40 @@ public class DispatchManager extends Thread {
   public void shutdown() {
     this.running = false;
     this.pubSubConnection.close();
+    this.dispatchExecutor.shutdown();
+    this.deadLetterExecutor.shutdown();
+    this.resubscribeExecutor.shutdown();
   }
 
-  public synchronized void subscribe(String name, DispatchChannel dispatchChannel) {
-    Optional<DispatchChannel> previous = Optional.ofNullable(subscriptions.get(name));
-    subscriptions.put(name, dispatchChannel);
+  public void subscribe(String name, DispatchChannel dispatchChannel) {
+    synchronized (this) {
+      Optional<DispatchChannel> previous = Optional.ofNullable(subscriptions.get(name));
+      subscriptions.put(name, dispatchChannel);
+      pendingSubscriptionChanges.add(new SubscriptionChange(true, name));
 
-    try {
-      pubSubConnection.subscribe(name);
-    } catch (IOException e) {
-      logger.warn("Subscription error", e);
+      if (previous.isPresent()) {
+        dispatchUnsubscription(name, previous.get());
+      }
     }
 
-    if (previous.isPresent()) {
-      dispatchUnsubscription(name, previous.get());
-    }
+    flushSubscriptionChanges();
   }
 
-  public synchronized void unsubscribe(String name, DispatchChannel channel) {
-    Optional<DispatchChannel> subscription = Optional.ofNullable(subscriptions.get(name));
-
-    if (subscription.isPresent() && subscription.get() == channel) {
-      subscriptions.remove(name);
+  public void unsubscribe(String name, DispatchChannel channel) {
+    synchronized (this) {
+      Optional<DispatchChannel> subscription = Optional.ofNullable(subscriptions.get(name));
 
-      try {
-        pubSubConnection.unsubscribe(name);
-      } catch (IOException e) {
-        logger.warn("Unsubscribe error", e);
+      if (subscription.isEmpty() || subscription.get() != channel) {
+        return;
       }
 
+      subscriptions.remove(name);
+      pendingSubscriptionChanges.add(new SubscriptionChange(false, name));
+
       dispatchUnsubscription(name, subscription.get());
     }
+
+    flushSubscriptionChanges();
   }
 
   public boolean hasSubscription(String name) {
@@ -125,53 +175,101 @@ public class DispatchManager extends Thread {
     if (subscription.isPresent()) {
       dispatchMessage(reply.getChannel(), subscription.get(), reply.getContent().get());
     } else if (deadLetterChannel.isPresent()) {
-      dispatchMessage(reply.getChannel(), deadLetterChannel.get(), reply.getContent().get());
+      dispatchDeadLetter(reply.getChannel(), reply.getContent().get());
     } else {
       logger.warn("Received message for non-existing channel, with no dead letter handler: " + reply.getChannel());
     }
   }
 
   private void resubscribeAll() {
-    new Thread() {
-      @Override
-      public void run() {
-        synchronized (DispatchManager.this) {
-          try {
-            for (String name : subscriptions.keySet()) {
-              pubSubConnection.subscribe(name);
-            }
-          } catch (IOException e) {
-            logger.warn("***** RESUBSCRIPTION ERROR *****", e);
-          }
-        }
+    synchronized (this) {
+      for (String name : subscriptions.keySet()) {
+        pendingSubscriptionChanges.add(new SubscriptionChange(true, name));
       }
-    }.start();
+    }
+
+    try {
+      resubscribeExecutor.execute(this::flushSubscriptionChanges);
+    } catch (RejectedExecutionException e) {
+      logger.info("Not resubscribing; dispatch manager is shutting down");
+    }
   }
 
-  private void dispatchMessage(final String name, final DispatchChannel channel, final byte[] message) {
-    executor.execute(new Runnable() {
-      @Override
-      public void run() {
-        channel.onDispatchMessage(name, message);
+  private void flushSubscriptionChanges() {
+    do {
+      if (!subscriptionFlushLock.tryLock()) {
+        return;
       }
-    });
+
+      try {
+        writeSubscriptionChanges();
+      } finally {
+        subscriptionFlushLock.unlock();
+      }
+    } while (!pendingSubscriptionChanges.isEmpty());
   }
 
-  private void dispatchSubscription(final String name, final DispatchChannel channel) {
-    executor.execute(new Runnable() {
-      @Override
-      public void run() {
-        channel.onDispatchSubscribed(name);
+  private void writeSubscriptionChanges() {
+    List<String>       channels  = new ArrayList<>();
+    boolean            subscribe = true;
+    SubscriptionChange change;
+
+    // Consecutive changes of the same kind become one command, which keeps the relative order of changes to a channel
+    while ((change = pendingSubscriptionChanges.poll()) != null) {
+      if (!channels.isEmpty() && (change.subscribe != subscribe || channels.size() >= MAX_CHANNELS_PER_COMMAND)) {
+        writeSubscriptionChange(subscribe, channels);
+        channels = new ArrayList<>();
       }
-    });
+
+      subscribe = change.subscribe;
+      channels.add(change.channel);
+    }
+
+    if (!channels.isEmpty()) {
+      writeSubscriptionChange(subscribe, channels);
+    }
+  }
+
+  private void writeSubscriptionChange(boolean subscribe, List<String> channels) {
+    try {
+      if (subscribe) pubSubConnection.subscribe(channels);
+      else           pubSubConnection.unsubscribe(channels);
+    } catch (IOException e) {
+      logger.warn(subscribe ? "Subscription error" : "Unsubscribe error", e);
+    }
+  }
+
+  private void dispatchMessage(final String name, final DispatchChannel channel, final byte[] message) {
+    if (!dispatchExecutor.executeMessage(name, () -> channel.onDispatchMessage(name, message))) {
+      // The channel's lane is backed up; hand the message to the dead letter channel rather than block the reader
+      overflowMeter.mark();
+
+      if (deadLetterChannel.isPresent()) dispatchDeadLetter(name, message);
+      else                               droppedMeter.mark();
+    }
+  }
+
+  private void dispatchDeadLetter(final String name, final byte[] message) {
+    if (!deadLetterExecutor.executeMessage(name, () -> deadLetterChannel.get().onDispatchMessage(name, message))) {
+      droppedMeter.mark();
+    }
+  }
+
+  private void dispatchSubscription(final String name, final DispatchChannel channel) {
+    dispatchExecutor.executeLifecycleEvent(name, () -> channel.onDispatchSubscribed(name));
   }
 
   private void dispatchUnsubscription(final String name, final DispatchChannel channel) {
-    executor.execute(new Runnable() {
-      @Override
-      public void run() {
-        channel.onDispatchUnsubscribed(name);
-      }
-    });
+    dispatchExecutor.executeLifecycleEvent(name, () -> channel.onDispatchUnsubscribed(name));
+  }
+
+  private static class SubscriptionChange {
+    private final boolean subscribe;
+    private final String  channel;
+
+    private SubscriptionChange(boolean subscribe, String channel) {
+      this.subscribe = subscribe;
+      this.channel   = channel;
+    }
   }
 }
@@ -4,7 +4,6 @@
  */
 package org.whispersystems.dispatch.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -19,50 +18,88 @@ public class RedisInputStream {
     this.inputStream = inputStream;
   }
 
-  public String readLine() throws IOException {
-    ByteArrayOutputStream boas = new ByteArrayOutputStream();
+  /**
+   * Reads a reply header line such as {@code $5} or {@code *3} and returns its value, without buffering the line.
+   */
+  public int readHeader(char type) throws IOException {
+    int character = read();
 
-    boolean foundCr = false;
+    if (character != type) {
+      throw new IOException("Invalid reply header, expected '" + type + "' but got '" + (char)character + "'");
+    }
 
-    while (true) {
-      int character = inputStream.read();
+    boolean negative = false;
+    int     digits   = 0;
+    long    value    = 0;
 
-      if (character == -1) {
-        throw new IOException("Stream closed!");
+    character = read();
+
+    if (character == '-') {
+      negative  = true;
+      character = read();
+    }
+
+    while (character != CR) {
+      if (character < '0' || character > '9' || ++digits > 10) {
+        throw new IOException("Invalid reply header value");
       }
 
-      boas.write(character);
+      value     = value * 10 + (character - '0');
+      character = read();
+    }
+
+    readLineTerminatorAfterCr();
 
-      if      (foundCr && character == LF) break;
-      else if (character == CR)            foundCr = true;
-      else if (foundCr)                    foundCr = false;
+    if (digits == 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("Invalid reply header value");
     }
 
-    byte[] data = boas.toByteArray();
-    return new String(data, 0, data.length-2);
+    return negative ? (int)-value : (int)value;
   }
 
-  public byte[] readFully(int size) throws IOException {
-    byte[] result    = new byte[size];
-    int    offset    = 0;
-    int    remaining = result.length;
+  /**
+   * Reads {@code size} bytes into the start of {@code buffer}, which must be at least that large.
+   */
+  public void readFully(byte[] buffer, int size) throws IOException {
+    int offset = 0;
 
-    while (remaining > 0) {
-      int read = inputStream.read(result, offset, remaining);
+    while (offset < size) {
+      int read = inputStream.read(buffer, offset, size - offset);
 
       if (read < 0) {
         throw new IOException("Stream closed!");
       }
 
-      offset    += read;
-      remaining -= read;
+      offset += read;
+    }
+  }
+
+  public void readLineTerminator() throws IOException {
+    if (read() != CR) {
+      throw new IOException("Expected line terminator");
     }
 
-    return result;
+    readLineTerminatorAfterCr();
   }
 
   public void close() throws IOException {
     inputStream.close();
   }
 
+  private void readLineTerminatorAfterCr() throws IOException {
+    if (read() != LF) {
+      throw new IOException("Expected line terminator");
+    }
+  }
+
+  private int read() throws IOException {
+    int character = inputStream.read();
+
+    if (character == -1) {
+      throw new IOException("Stream closed!");
+    }
+
+    return character;
+  }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch.redis;
+
+import java.util.Arrays;
+
+/**
+ * The encoded names of subscribed channels, so a channel name read off the wire can be resolved to the subscriber's
+ * own {@link String} by comparing bytes instead of decoding a new string for every reply.
+ */
+class ChannelNameTable {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private Entry[] buckets = new Entry[INITIAL_CAPACITY];
+  private int     size;
+
+  /**
+   * @return the encoded channel name
+   */
+  synchronized byte[] add(String name) {
+    byte[] encoded = name.getBytes();
+    int    hash    = hash(encoded, encoded.length);
+    int    index   = hash & (buckets.length - 1);
+
+    for (Entry entry = buckets[index]; entry != null; entry = entry.next) {
+      if (entry.hash == hash && Arrays.equals(entry.encoded, encoded)) {
+        entry.name = name;
+        return entry.encoded;
+      }
+    }
+
+    buckets[index] = new Entry(encoded, name, hash, buckets[index]);
+
+    if (++size > buckets.length - (buckets.length >> 2)) {
+      resize();
+    }
+
+    return encoded;
+  }
+
+  synchronized void remove(String name) {
+    byte[] encoded  = name.getBytes();
+    int    hash     = hash(encoded, encoded.length);
+    int    index    = hash & (buckets.length - 1);
+    Entry  previous = null;
+
+    for (Entry entry = buckets[index]; entry != null; previous = entry, entry = entry.next) {
+      if (entry.hash == hash && Arrays.equals(entry.encoded, encoded)) {
+        if (previous == null) buckets[index] = entry.next;
+        else                  previous.next  = entry.next;
+
+        size--;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the name encoded by the first {@code length} bytes of {@code buffer}, or {@code null} if it isn't known
+   */
+  synchronized String get(byte[] buffer, int length) {
+    int hash = hash(buffer, length);
+
+    for (Entry entry = buckets[hash & (buckets.length - 1)]; entry != null; entry = entry.next) {
+      if (entry.hash == hash && Arrays.equals(entry.encoded, 0, entry.encoded.length, buffer, 0, length)) {
+        return entry.name;
+      }
+    }
+
+    return null;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  private void resize() {
+    Entry[] resized = new Entry[buckets.length * 2];
+
+    for (Entry bucket : buckets) {
+      Entry entry = bucket;
+
+      while (entry != null) {
+        Entry next  = entry.next;
+        int   index = entry.hash & (resized.length - 1);
+
+        entry.next     = resized[index];
+        resized[index] = entry;
+        entry          = next;
+      }
+    }
+
+    buckets = resized;
+  }
+
+  private static int hash(byte[] buffer, int length) {
+    int hash = 1;
+
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + buffer[i];
+    }
+
+    return hash ^ (hash >>> 16);
+  }
+
+  private static class Entry {
+    private final byte[] encoded;
+    private final int    hash;
+
+    private String name;
+    private Entry  next;
+
+    private Entry(byte[] encoded, String name, int hash, Entry next) {
+      this.encoded = encoded;
+      this.name    = name;
+      this.hash    = hash;
+      this.next    = next;
+    }
+  }
+}
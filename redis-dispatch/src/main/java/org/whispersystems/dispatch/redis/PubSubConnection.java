@@ -7,17 +7,16 @@ package org.whispersystems.dispatch.redis;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.dispatch.io.RedisInputStream;
-import org.whispersystems.dispatch.redis.protocol.ArrayReplyHeader;
-import org.whispersystems.dispatch.redis.protocol.IntReply;
-import org.whispersystems.dispatch.redis.protocol.StringReplyHeader;
 import org.whispersystems.dispatch.util.Util;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PubSubConnection {
@@ -32,11 +31,20 @@ public class PubSubConnection {
   private static final byte[] UNSUBSCRIBE_COMMAND = {'U', 'N', 'S', 'U', 'B', 'S', 'C', 'R', 'I', 'B', 'E', ' '};
   private static final byte[] CRLF                = {'\r', '\n'                                                };
 
+  private static final byte[] SUBSCRIBE_NAME      = Arrays.copyOf(SUBSCRIBE_COMMAND,   SUBSCRIBE_COMMAND.length   - 1);
+  private static final byte[] UNSUBSCRIBE_NAME    = Arrays.copyOf(UNSUBSCRIBE_COMMAND, UNSUBSCRIBE_COMMAND.length - 1);
+
   private final OutputStream     outputStream;
   private final RedisInputStream inputStream;
   private final Socket           socket;
   private final AtomicBoolean    closed;
 
+  private final ChannelNameTable channelNames = new ChannelNameTable();
+
+  // Only touched by the reading thread
+  private final PubSubReply reply  = new PubSubReply();
+  private       byte[]      buffer = new byte[256];
+
   public PubSubConnection(Socket socket) throws IOException {
     this.socket       = socket;
     this.outputStream = socket.getOutputStream();
@@ -47,34 +55,51 @@ public class PubSubConnection {
   public void subscribe(String channelName) throws IOException {
     if (closed.get()) throw new IOException("Connection closed!");
 
-    byte[] command = Util.combine(SUBSCRIBE_COMMAND, channelName.getBytes(), CRLF);
+    byte[] command = Util.combine(SUBSCRIBE_COMMAND, channelNames.add(channelName), CRLF);
     outputStream.write(command);
   }
 
   public void unsubscribe(String channelName) throws IOException {
     if (closed.get()) throw new IOException("Connection closed!");
 
+    channelNames.remove(channelName);
+
     byte[] command = Util.combine(UNSUBSCRIBE_COMMAND, channelName.getBytes(), CRLF);
     outputStream.write(command);
   }
 
+  /**
+   * Subscribes to all of the given channels with a single command.
+   */
+  public void subscribe(Collection<String> channelNames) throws IOException {
+    writeMultiBulkCommand(SUBSCRIBE_NAME, channelNames, true);
+  }
+
+  /**
+   * Unsubscribes from all of the given channels with a single command.
+   */
+  public void unsubscribe(Collection<String> channelNames) throws IOException {
+    writeMultiBulkCommand(UNSUBSCRIBE_NAME, channelNames, false);
+  }
+
+  /**
+   * Reads the next reply. The returned instance is reused by the next call, so callers must finish with it first.
+   */
   public PubSubReply read() throws IOException {
     if (closed.get()) throw new IOException("Connection closed!");
 
-    ArrayReplyHeader replyHeader = new ArrayReplyHeader(inputStream.readLine());
+    int elementCount = inputStream.readHeader('*');
 
-    if (replyHeader.getElementCount() != 3) {
-      throw new IOException("Received array reply header with strange count: " + replyHeader.getElementCount());
+    if (elementCount != 3) {
+      throw new IOException("Received array reply header with strange count: " + elementCount);
     }
 
-    StringReplyHeader replyTypeHeader = new StringReplyHeader(inputStream.readLine());
-    byte[]            replyType       = inputStream.readFully(replyTypeHeader.getStringLength());
-    inputStream.readLine();
+    int replyTypeLength = readBulkString();
 
-    if      (Arrays.equals(SUBSCRIBE_TYPE, replyType))   return readSubscribeReply();
-    else if (Arrays.equals(UNSUBSCRIBE_TYPE, replyType)) return readUnsubscribeReply();
-    else if (Arrays.equals(MESSAGE_TYPE, replyType))     return readMessageReply();
-    else throw new IOException("Unknown reply type: " + new String(replyType));
+    if      (Arrays.equals(SUBSCRIBE_TYPE, 0, SUBSCRIBE_TYPE.length, buffer, 0, replyTypeLength))     return readSubscriptionReply(PubSubReply.Type.SUBSCRIBE);
+    else if (Arrays.equals(UNSUBSCRIBE_TYPE, 0, UNSUBSCRIBE_TYPE.length, buffer, 0, replyTypeLength)) return readSubscriptionReply(PubSubReply.Type.UNSUBSCRIBE);
+    else if (Arrays.equals(MESSAGE_TYPE, 0, MESSAGE_TYPE.length, buffer, 0, replyTypeLength))         return readMessageReply();
+    else throw new IOException("Unknown reply type: " + new String(buffer, 0, replyTypeLength));
   }
 
   public void close() {
@@ -88,36 +113,89 @@ public class PubSubConnection {
     }
   }
 
+  // Inline commands are capped at 64KB by the server, so multi-channel commands use the multi-bulk encoding instead
+  private void writeMultiBulkCommand(byte[] name, Collection<String> channels, boolean subscribe) throws IOException {
+    if (closed.get()) throw new IOException("Connection closed!");
+
+    ByteArrayOutputStream command = new ByteArrayOutputStream(32 + channels.size() * 64);
+
+    command.write('*');
+    command.write(String.valueOf(channels.size() + 1).getBytes(StandardCharsets.US_ASCII));
+    command.write(CRLF);
+    writeBulkString(command, name);
+
+    for (String channel : channels) {
+      if (subscribe) {
+        writeBulkString(command, channelNames.add(channel));
+      } else {
+        channelNames.remove(channel);
+        writeBulkString(command, channel.getBytes());
+      }
+    }
+
+    command.writeTo(outputStream);
+  }
+
+  private static void writeBulkString(ByteArrayOutputStream command, byte[] value) throws IOException {
+    command.write('$');
+    command.write(String.valueOf(value.length).getBytes(StandardCharsets.US_ASCII));
+    command.write(CRLF);
+    command.write(value);
+    command.write(CRLF);
+  }
+
   private PubSubReply readMessageReply() throws IOException {
-    StringReplyHeader channelNameHeader = new StringReplyHeader(inputStream.readLine());
-    byte[]            channelName       = inputStream.readFully(channelNameHeader.getStringLength());
-    inputStream.readLine();
+    String channelName   = readChannelName();
+    int    messageLength = inputStream.readHeader('$');
+
+    if (messageLength < 0) {
+      throw new IOException("Invalid message length: " + messageLength);
+    }
 
-    StringReplyHeader messageHeader = new StringReplyHeader(inputStream.readLine());
-    byte[]            message       = inputStream.readFully(messageHeader.getStringLength());
-    inputStream.readLine();
+    // The content is handed off to another thread, so unlike everything else in the reply it gets its own array
+    byte[] message = new byte[messageLength];
+    inputStream.readFully(message, messageLength);
+    inputStream.readLineTerminator();
 
-    return new PubSubReply(PubSubReply.Type.MESSAGE, new String(channelName), Optional.of(message));
+    reply.set(PubSubReply.Type.MESSAGE, channelName, message);
+    return reply;
   }
 
-  private PubSubReply readUnsubscribeReply() throws IOException {
-    String channelName = readSubscriptionReply();
-    return new PubSubReply(PubSubReply.Type.UNSUBSCRIBE, channelName, Optional.empty());
+  private PubSubReply readSubscriptionReply(PubSubReply.Type type) throws IOException {
+    String channelName = readChannelName();
+    inputStream.readHeader(':');
+
+    reply.set(type, channelName, null);
+    return reply;
   }
 
-  private PubSubReply readSubscribeReply() throws IOException {
-    String channelName = readSubscriptionReply();
-    return new PubSubReply(PubSubReply.Type.SUBSCRIBE, channelName, Optional.empty());
+  private String readChannelName() throws IOException {
+    int    length = readBulkString();
+    String name   = channelNames.get(buffer, length);
+
+    return name != null ? name : new String(buffer, 0, length);
   }
 
-  private String readSubscriptionReply() throws IOException {
-    StringReplyHeader channelNameHeader = new StringReplyHeader(inputStream.readLine());
-    byte[]            channelName       = inputStream.readFully(channelNameHeader.getStringLength());
-    inputStream.readLine();
+  /**
+   * Reads a bulk string into the reusable buffer, growing it if necessary.
+   *
+   * @return the length of the string
+   */
+  private int readBulkString() throws IOException {
+    int length = inputStream.readHeader('$');
+
+    if (length < 0) {
+      throw new IOException("Invalid bulk string length: " + length);
+    }
+
+    if (length > buffer.length) {
+      buffer = new byte[Math.max(length, buffer.length * 2)];
+    }
 
-    IntReply subscriptionCount = new IntReply(inputStream.readLine());
+    inputStream.readFully(buffer, length);
+    inputStream.readLineTerminator();
 
-    return new String(channelName);
+    return length;
   }
 
 }
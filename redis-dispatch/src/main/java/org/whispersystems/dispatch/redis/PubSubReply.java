@@ -6,6 +6,10 @@ package org.whispersystems.dispatch.redis;
 
 import java.util.Optional;
 
+/**
+ * A reply read from a pub/sub connection. {@link PubSubConnection#read()} reuses a single instance per connection, so
+ * a reply's fields are only valid until the next read; the message content is always a fresh array, and may be kept.
+ */
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class PubSubReply {
 
@@ -15,11 +19,18 @@ public class PubSubReply {
     UNSUBSCRIBE
   }
 
-  private final Type             type;
-  private final String           channel;
-  private final Optional<byte[]> content;
+  private Type   type;
+  private String channel;
+  private byte[] content;
+
+  PubSubReply() {
+  }
 
   public PubSubReply(Type type, String channel, Optional<byte[]> content) {
+    set(type, channel, content.orElse(null));
+  }
+
+  void set(Type type, String channel, byte[] content) {
     this.type    = type;
     this.channel = channel;
     this.content = content;
@@ -34,7 +45,7 @@ public class PubSubReply {
   }
 
   public Optional<byte[]> getContent() {
-    return content;
+    return Optional.ofNullable(content);
   }
 
 }
@@ -4,29 +4,24 @@
  */
 package org.whispersystems.dispatch.util;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 public class Util {
 
   public static byte[] combine(byte[]... elements) {
-    try {
-      int sum = 0;
-
-      for (byte[] element : elements) {
-        sum += element.length;
-      }
+    int sum = 0;
 
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(sum);
+    for (byte[] element : elements) {
+      sum += element.length;
+    }
 
-      for (byte[] element : elements) {
-        baos.write(element);
-      }
+    byte[] combined = new byte[sum];
+    int    offset   = 0;
 
-      return baos.toByteArray();
-    } catch (IOException e) {
-      throw new AssertionError(e);
+    for (byte[] element : elements) {
+      System.arraycopy(element, 0, combined, offset, element.length);
+      offset += element.length;
     }
+
+    return combined;
   }
 
 
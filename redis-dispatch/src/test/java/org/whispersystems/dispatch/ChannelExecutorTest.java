@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelExecutorTest {
+
+  private final ChannelExecutor channelExecutor = new ChannelExecutor("test", 4, 2);
+
+  @After
+  public void tearDown() {
+    channelExecutor.shutdown();
+  }
+
+  @Test
+  public void testOrderedPerChannel() throws InterruptedException {
+    ChannelExecutor     unbounded = new ChannelExecutor("ordered", 4, Integer.MAX_VALUE);
+    List<Integer>       executed  = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch      done      = new CountDownLatch(1000);
+
+    try {
+      for (int i = 0; i < 1000; i++) {
+        final int sequence = i;
+
+        assertTrue(unbounded.executeMessage("foo", () -> {
+          executed.add(sequence);
+          done.countDown();
+        }));
+      }
+
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(i, (int)executed.get(i));
+      }
+    } finally {
+      unbounded.shutdown();
+    }
+  }
+
+  @Test
+  public void testOverflow() throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    assertTrue(channelExecutor.executeMessage("foo", () -> {
+      started.countDown();
+
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }));
+
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    assertTrue(channelExecutor.executeMessage("foo", () -> {}));
+    assertTrue(channelExecutor.executeMessage("foo", () -> {}));
+    assertFalse(channelExecutor.executeMessage("foo", () -> {}));
+    assertEquals(2, channelExecutor.getQueuedTaskCount());
+
+    CountDownLatch lifecycle = new CountDownLatch(1);
+    channelExecutor.executeLifecycleEvent("foo", lifecycle::countDown);
+
+    blocked.countDown();
+
+    assertTrue(lifecycle.await(10, TimeUnit.SECONDS));
+  }
+}
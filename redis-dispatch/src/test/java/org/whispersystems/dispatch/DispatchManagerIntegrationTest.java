@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.dispatch.redis.PubSubConnection;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class DispatchManagerIntegrationTest {
+
+  private static final int CHANNEL_COUNT = 20_000;
+
+  private RedisServer     redisServer;
+  private int             port;
+  private DispatchManager dispatchManager;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeFalse(System.getProperty("os.name").equalsIgnoreCase("windows"));
+
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+
+    redisServer = RedisServer.builder()
+                             .setting("appendonly no")
+                             .setting("dir " + System.getProperty("java.io.tmpdir"))
+                             .port(port)
+                             .build();
+
+    redisServer.start();
+
+    dispatchManager = new DispatchManager(() -> {
+      try {
+        return new PubSubConnection(new Socket("127.0.0.1", port));
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }, Optional.empty());
+
+    dispatchManager.start();
+  }
+
+  @After
+  public void tearDown() {
+    dispatchManager.shutdown();
+    redisServer.stop();
+  }
+
+  @Test
+  public void testSubscribeAndResubscribeManyChannels() throws Exception {
+    CountingDispatchChannel channel = new CountingDispatchChannel(CHANNEL_COUNT);
+
+    for (int i = 0; i < CHANNEL_COUNT; i++) {
+      dispatchManager.subscribe("channel-" + i, channel);
+    }
+
+    assertTrue(channel.subscribed.await(30, TimeUnit.SECONDS));
+
+    channel.subscribed = new CountDownLatch(CHANNEL_COUNT);
+    sendCommand("CLIENT KILL TYPE pubsub");
+
+    assertTrue(channel.subscribed.await(30, TimeUnit.SECONDS));
+
+    sendCommand("PUBLISH channel-" + (CHANNEL_COUNT - 1) + " hello");
+
+    assertTrue(channel.received.await(10, TimeUnit.SECONDS));
+    assertArrayEquals("hello".getBytes(), channel.message);
+  }
+
+  private void sendCommand(String command) throws IOException {
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      OutputStream outputStream = socket.getOutputStream();
+      InputStream  inputStream  = socket.getInputStream();
+
+      outputStream.write((command + "\r\n").getBytes());
+      outputStream.flush();
+
+      // Wait for the reply so the command has taken effect before moving on
+      inputStream.read();
+    }
+  }
+
+  private static class CountingDispatchChannel implements DispatchChannel {
+
+    private volatile CountDownLatch subscribed;
+    private final    CountDownLatch received = new CountDownLatch(1);
+    private volatile byte[]         message;
+
+    private CountingDispatchChannel(int expectedSubscriptions) {
+      this.subscribed = new CountDownLatch(expectedSubscriptions);
+    }
+
+    @Override
+    public void onDispatchMessage(String channel, byte[] message) {
+      this.message = message;
+      received.countDown();
+    }
+
+    @Override
+    public void onDispatchSubscribed(String channel) {
+      subscribed.countDown();
+    }
+
+    @Override
+    public void onDispatchUnsubscribed(String channel) {
+    }
+  }
+}
@@ -15,11 +15,15 @@ import org.whispersystems.dispatch.redis.PubSubConnection;
 import org.whispersystems.dispatch.redis.PubSubReply;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
@@ -112,19 +116,53 @@ public class DispatchManagerTest {
     assertArrayEquals("there".getBytes(), captor.getValue());
   }
 
+  @Test
+  public void testResubscribeAfterError() throws IOException {
+    DispatchChannel fooChannel = mock(DispatchChannel.class);
+    DispatchChannel barChannel = mock(DispatchChannel.class);
+
+    dispatchManager.subscribe("foo", fooChannel);
+    dispatchManager.subscribe("bar", barChannel);
+
+    PubSubConnection reconnected = mock(PubSubConnection.class);
+
+    when(socketFactory.connect()).thenReturn(reconnected);
+    when(reconnected.read()).thenAnswer(invocation -> pubSubReplyInputStream.read());
+
+    pubSubReplyInputStream.fail();
+
+    ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(reconnected, timeout(1000)).subscribe(captor.capture());
+
+    assertEquals(Set.of("foo", "bar"), new HashSet<>(captor.getValue()));
+  }
+
   private static class PubSubReplyInputStream {
 
     private final List<PubSubReply> pubSubReplyList = new LinkedList<>();
 
-    public synchronized PubSubReply read() {
+    private boolean failed;
+
+    public synchronized PubSubReply read() throws IOException {
       try {
-        while (pubSubReplyList.isEmpty()) wait();
+        while (pubSubReplyList.isEmpty() && !failed) wait();
+
+        if (failed) {
+          failed = false;
+          throw new IOException("Connection lost");
+        }
+
         return pubSubReplyList.remove(0);
       } catch (InterruptedException e) {
         throw new AssertionError(e);
       }
     }
 
+    public synchronized void fail() {
+      failed = true;
+      notifyAll();
+    }
+
     public synchronized void write(PubSubReply pubSubReply) {
       pubSubReplyList.add(pubSubReply);
       notifyAll();
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class RedisInputStreamTest {
+
+  @Test
+  public void testReadHeader() throws IOException {
+    RedisInputStream inputStream = streamFor("$1000\r\n*3\r\n:-1\r\n");
+
+    assertEquals(1000, inputStream.readHeader('$'));
+    assertEquals(3, inputStream.readHeader('*'));
+    assertEquals(-1, inputStream.readHeader(':'));
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadHeaderBadPrefix() throws IOException {
+    streamFor("*3\r\n").readHeader('$');
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadHeaderBadNumber() throws IOException {
+    streamFor("$100A\r\n").readHeader('$');
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadHeaderEmpty() throws IOException {
+    streamFor("$\r\n").readHeader('$');
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadHeaderOverflow() throws IOException {
+    streamFor("$99999999999\r\n").readHeader('$');
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadHeaderTruncated() throws IOException {
+    streamFor("$10").readHeader('$');
+  }
+
+  @Test
+  public void testReadFully() throws IOException {
+    RedisInputStream inputStream = streamFor("abcde\r\n$1\r\n");
+    byte[]           buffer      = new byte[8];
+
+    inputStream.readFully(buffer, 5);
+    inputStream.readLineTerminator();
+
+    assertEquals("abcde", new String(buffer, 0, 5));
+    assertEquals(1, inputStream.readHeader('$'));
+  }
+
+  private static RedisInputStream streamFor(String data) {
+    return new RedisInputStream(new ByteArrayInputStream(data.getBytes()));
+  }
+}
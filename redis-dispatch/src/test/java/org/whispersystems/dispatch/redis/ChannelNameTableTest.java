@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.dispatch.redis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ChannelNameTableTest {
+
+  @Test
+  public void testGet() {
+    ChannelNameTable channelNames = new ChannelNameTable();
+    String           name         = "channel";
+
+    assertArrayEquals("channel".getBytes(), channelNames.add(name));
+
+    byte[] buffer = Arrays.copyOf("channel".getBytes(), 64);
+
+    assertSame(name, channelNames.get(buffer, 7));
+    assertNull(channelNames.get(buffer, 6));
+    assertNull(channelNames.get("other".getBytes(), 5));
+  }
+
+  @Test
+  public void testRemove() {
+    ChannelNameTable channelNames = new ChannelNameTable();
+
+    channelNames.add("foo");
+    channelNames.add("bar");
+    channelNames.remove("foo");
+    channelNames.remove("baz");
+
+    assertNull(channelNames.get("foo".getBytes(), 3));
+    assertEquals("bar", channelNames.get("bar".getBytes(), 3));
+    assertEquals(1, channelNames.size());
+  }
+
+  @Test
+  public void testResize() {
+    ChannelNameTable channelNames = new ChannelNameTable();
+
+    for (int i = 0; i < 10_000; i++) {
+      channelNames.add("channel-" + i);
+    }
+
+    assertEquals(10_000, channelNames.size());
+
+    for (int i = 0; i < 10_000; i++) {
+      byte[] encoded = ("channel-" + i).getBytes();
+      assertEquals("channel-" + i, channelNames.get(encoded, encoded.length));
+    }
+  }
+}
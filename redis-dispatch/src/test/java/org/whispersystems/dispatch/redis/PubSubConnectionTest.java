@@ -9,13 +9,18 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.Socket;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.*;
@@ -87,6 +92,38 @@ public class PubSubConnectionTest {
     assertArrayEquals(captor.getValue(), "UNSUBSCRIBE bazbar\r\n".getBytes());
   }
 
+  @Test
+  public void testSubscribeMultiple() throws IOException {
+    OutputStream outputStream = mock(OutputStream.class);
+    Socket       socket       = mock(Socket.class      );
+    when(socket.getOutputStream()).thenReturn(outputStream);
+    PubSubConnection connection  = new PubSubConnection(socket);
+
+    connection.subscribe(List.of("foo", "barbaz"));
+
+    ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+    ArgumentCaptor<Integer> length = ArgumentCaptor.forClass(Integer.class);
+    verify(outputStream).write(captor.capture(), eq(0), length.capture());
+
+    assertArrayEquals("*3\r\n$9\r\nSUBSCRIBE\r\n$3\r\nfoo\r\n$6\r\nbarbaz\r\n".getBytes(), Arrays.copyOf(captor.getValue(), length.getValue()));
+  }
+
+  @Test
+  public void testUnsubscribeMultiple() throws IOException {
+    OutputStream outputStream = mock(OutputStream.class);
+    Socket       socket       = mock(Socket.class      );
+    when(socket.getOutputStream()).thenReturn(outputStream);
+    PubSubConnection connection  = new PubSubConnection(socket);
+
+    connection.unsubscribe(List.of("foo"));
+
+    ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+    ArgumentCaptor<Integer> length = ArgumentCaptor.forClass(Integer.class);
+    verify(outputStream).write(captor.capture(), eq(0), length.capture());
+
+    assertArrayEquals("*2\r\n$11\r\nUNSUBSCRIBE\r\n$3\r\nfoo\r\n".getBytes(), Arrays.copyOf(captor.getValue(), length.getValue()));
+  }
+
   @Test
   public void testTricklyResponse() throws Exception {
     InputStream  inputStream  = mockInputStreamFor(new TrickleInputStream(REPLY.getBytes()));
@@ -123,6 +160,68 @@ public class PubSubConnectionTest {
     readResponses(pubSubConnection);
   }
 
+  @Test
+  public void testChannelNamesResolved() throws Exception {
+    InputStream  inputStream  = mockInputStreamFor(new FullInputStream(REPLY.getBytes()));
+    OutputStream outputStream = mock(OutputStream.class);
+    Socket       socket       = mock(Socket.class      );
+    when(socket.getOutputStream()).thenReturn(outputStream);
+    when(socket.getInputStream()).thenReturn(inputStream);
+
+    PubSubConnection pubSubConnection = new PubSubConnection(socket);
+    String           channel          = new String("abcde");
+
+    pubSubConnection.subscribe(List.of(channel));
+
+    assertSame(channel, pubSubConnection.read().getChannel());
+    assertNotSame(channel, pubSubConnection.read().getChannel());
+    assertEquals("klmno", pubSubConnection.read().getChannel());
+    assertSame(channel, pubSubConnection.read().getChannel());
+
+    pubSubConnection.unsubscribe(List.of(channel));
+
+    assertEquals("klmno", pubSubConnection.read().getChannel());
+  }
+
+  @Test
+  public void testReadAllocation() throws Exception {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+    final int     messageCount = 20_000;
+    final String  message      = "*3\r\n$7\r\nmessage\r\n$5\r\nabcde\r\n$10\r\n1234567890\r\n";
+    StringBuilder replies      = new StringBuilder();
+
+    for (int i = 0; i < messageCount * 2; i++) {
+      replies.append(message);
+    }
+
+    Socket socket = mock(Socket.class);
+    when(socket.getOutputStream()).thenReturn(mock(OutputStream.class));
+    when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(replies.toString().getBytes()));
+
+    PubSubConnection pubSubConnection = new PubSubConnection(socket);
+    pubSubConnection.subscribe(List.of("abcde"));
+
+    for (int i = 0; i < messageCount; i++) {
+      pubSubConnection.read();
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long before   = threadMXBean.getThreadAllocatedBytes(threadId);
+
+    for (int i = 0; i < messageCount; i++) {
+      pubSubConnection.read();
+    }
+
+    long allocatedPerMessage = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / messageCount;
+
+    // Only the 10 byte message content should be allocated, which is 32 bytes with the array header and padding
+    assertTrue("Allocated " + allocatedPerMessage + " bytes per message", allocatedPerMessage <= 64);
+  }
+
   private InputStream mockInputStreamFor(final MockInputStream stub) throws IOException {
     InputStream result = mock(InputStream.class);
 
@@ -19,6 +19,7 @@ import org.whispersystems.textsecuregcm.configuration.GcpAttachmentsConfiguratio
 import org.whispersystems.textsecuregcm.configuration.AccountsDatabaseConfiguration;
 import org.whispersystems.textsecuregcm.configuration.MaxDeviceConfiguration;
 import org.whispersystems.textsecuregcm.configuration.MessageCacheConfiguration;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.configuration.MicrometerConfiguration;
 import org.whispersystems.textsecuregcm.configuration.PaymentsServiceConfiguration;
 import org.whispersystems.textsecuregcm.configuration.PushConfiguration;
@@ -112,6 +113,11 @@ public class WhisperServerConfiguration extends Configuration {
   @JsonProperty
   private MessageCacheConfiguration messageCache;
 
+  @Valid
+  @NotNull
+  @JsonProperty
+  private MessageDeliveryConfiguration messageDelivery = new MessageDeliveryConfiguration();
+
   @Valid
   @NotNull
   @JsonProperty
@@ -274,6 +280,10 @@ public class WhisperServerConfiguration extends Configuration {
     return messageCache;
   }
 
+  public MessageDeliveryConfiguration getMessageDeliveryConfiguration() {
+    return messageDelivery;
+  }
+
   public RedisConfiguration getPushScheduler() {
     return pushScheduler;
   }
@@ -5,6 +5,11 @@
 
 package org.whispersystems.textsecuregcm.auth;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.whispersystems.textsecuregcm.crypto.Curve;
@@ -14,17 +19,32 @@ import org.whispersystems.textsecuregcm.entities.MessageProtos.ServerCertificate
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.util.Base64;
+import org.whispersystems.textsecuregcm.util.Constants;
 
 import java.io.IOException;
 import java.security.InvalidKeyException;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class CertificateGenerator {
 
+  private static final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private static final Meter          cacheHitMeter  = metricRegistry.meter(name(CertificateGenerator.class, "cacheHit"));
+
+  private static final long     CACHE_SIZE = 100_000;
+
+  // Certificates are reused for at most this long, so every certificate handed out is good for at least its
+  // configured lifetime less this interval.
+  private static final Duration CACHE_TTL  = Duration.ofHours(1);
+
   private final ECPrivateKey      privateKey;
   private final int               expiresDays;
   private final ServerCertificate serverCertificate;
 
+  private final Cache<String, byte[]> certificates = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).expireAfterWrite(CACHE_TTL).build();
+
   public CertificateGenerator(byte[] serverCertificate, ECPrivateKey privateKey, int expiresDays)
       throws InvalidProtocolBufferException
   {
@@ -34,6 +54,21 @@ public class CertificateGenerator {
   }
 
   public byte[] createFor(Account account, Device device, boolean includeE164) throws IOException, InvalidKeyException {
+    final String cacheKey = account.getUuid().toString() + '.' + device.getId() + '.' + account.getIdentityKey() + '.' + (includeE164 ? account.getNumber() : "");
+    final byte[] cached   = certificates.getIfPresent(cacheKey);
+
+    if (cached != null) {
+      cacheHitMeter.mark();
+      return cached;
+    }
+
+    final byte[] senderCertificate = generateFor(account, device, includeE164);
+    certificates.put(cacheKey, senderCertificate);
+
+    return senderCertificate;
+  }
+
+  private byte[] generateFor(Account account, Device device, boolean includeE164) throws IOException, InvalidKeyException {
     SenderCertificate.Certificate.Builder builder = SenderCertificate.Certificate.newBuilder()
                                                                                  .setSenderDevice(Math.toIntExact(device.getId()))
                                                                                  .setExpires(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(expiresDays))
@@ -20,6 +20,16 @@ public class MessageCacheConfiguration {
   @JsonProperty
   private int persistDelayMinutes = 10;
 
+  /**
+   * If enabled, durable messages for clients connected to this server are handed directly to their connections and only
+   * written to the message cache if the client doesn't acknowledge them within a short timeout. Direct delivery is only
+   * attempted once a client has drained its stored messages, so messages are never delivered out of order. A client
+   * that acknowledges a message after the timeout has already passed will receive that message a second time from the
+   * cache, though; clients must tolerate (and discard) duplicates before this is enabled.
+   */
+  @JsonProperty
+  private boolean durableLocalDeliveryEnabled = false;
+
   public RedisClusterConfiguration getRedisClusterConfiguration() {
     return cluster;
   }
@@ -28,4 +38,8 @@ public class MessageCacheConfiguration {
     return persistDelayMinutes;
   }
 
+  public boolean isDurableLocalDeliveryEnabled() {
+    return durableLocalDeliveryEnabled;
+  }
+
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.whispersystems.textsecuregcm.util.ua.ClientPlatform;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+public class MessageDeliveryConfiguration {
+
+  public static final int DEFAULT_MAX_IN_FLIGHT_MESSAGES = 200;
+
+  /**
+   * The number of stored messages that may be sent to a client without having been acknowledged yet. Windows larger
+   * than a page of stored messages let the next page be fetched and sent while the current one is being acknowledged.
+   */
+  @JsonProperty
+  @Min(1)
+  private int maxInFlightMessages = DEFAULT_MAX_IN_FLIGHT_MESSAGES;
+
+  @JsonProperty
+  @NotNull
+  private Map<ClientPlatform, Integer> maxInFlightMessagesByPlatform = Collections.emptyMap();
+
+  /**
+   * The number of newly-connected clients per second whose stored messages are drained as soon as they connect. When a
+   * burst of clients connects at once (after a deploy, for example), drains beyond this rate are queued and started
+   * later with some random jitter so they don't all hit the message stores at the same moment.
+   */
+  @JsonProperty
+  @Min(1)
+  private int immediateDrainsPerSecond = 500;
+
+  @JsonProperty
+  @Min(0)
+  private long maxDrainJitterMillis = 5_000;
+
+  @JsonProperty
+  @Min(0)
+  private long maxDrainDelayMillis = 60_000;
+
+  public int getImmediateDrainsPerSecond() {
+    return immediateDrainsPerSecond;
+  }
+
+  public long getMaxDrainJitterMillis() {
+    return maxDrainJitterMillis;
+  }
+
+  public long getMaxDrainDelayMillis() {
+    return maxDrainDelayMillis;
+  }
+
+  @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+  public int getMaxInFlightMessages(final Optional<ClientPlatform> platform) {
+    return platform.map(maxInFlightMessagesByPlatform::get)
+                   .filter(window -> window > 0)
+                   .orElse(maxInFlightMessages);
+  }
+
+}
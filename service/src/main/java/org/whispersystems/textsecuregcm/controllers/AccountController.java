@@ -290,7 +290,7 @@ public class AccountController {
         throw new WebApplicationException(Response.status(409).build());
       }
 
-      Account account = createAccount(number, password, userAgent, accountAttributes);
+      Account account = createAccount(number, password, userAgent, accountAttributes, existingAccount);
 
       metricRegistry.meter(name(AccountController.class, "verify", Util.getCountryCode(number))).mark();
 
@@ -611,9 +611,7 @@ public class AccountController {
     return false;
   }
 
-  private Account createAccount(String number, String password, String userAgent, AccountAttributes accountAttributes) {
-    Optional<Account> maybeExistingAccount = accounts.get(number);
-
+  private Account createAccount(String number, String password, String userAgent, AccountAttributes accountAttributes, Optional<Account> maybeExistingAccount) {
     Device device = new Device();
     device.setId(Device.MASTER_ID);
     device.setAuthenticationCredentials(new AuthenticationCredentials(password));
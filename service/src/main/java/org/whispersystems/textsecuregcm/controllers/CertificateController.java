@@ -5,7 +5,13 @@
 
 package org.whispersystems.textsecuregcm.controllers;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.dropwizard.auth.Auth;
 import org.signal.zkgroup.auth.ServerZkAuthOperations;
 import org.slf4j.Logger;
@@ -14,6 +20,8 @@ import org.whispersystems.textsecuregcm.auth.CertificateGenerator;
 import org.whispersystems.textsecuregcm.entities.DeliveryCertificate;
 import org.whispersystems.textsecuregcm.entities.GroupCredentials;
 import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.Util;
 
 import javax.ws.rs.GET;
@@ -26,9 +34,15 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.security.InvalidKeyException;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 @Path("/v1/certificate")
@@ -36,14 +50,31 @@ public class CertificateController {
 
   private final Logger logger = LoggerFactory.getLogger(CertificateController.class);
 
+  private final MetricRegistry metricRegistry              = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          issueAuthCredentialTimer    = metricRegistry.timer(name(getClass(), "issueAuthCredential"));
+  private final Timer          getAuthCredentialsTimer     = metricRegistry.timer(name(getClass(), "getAuthCredentials" ));
+  private final Meter          authCredentialCacheHitMeter = metricRegistry.meter(name(getClass(), "authCredentialCacheHit"));
+
+  private static final long     AUTH_CREDENTIAL_CACHE_SIZE = 100_000;
+
+  // Credentials are only requested for today onward, so an entry is useful until its redemption day has passed
+  private static final Duration AUTH_CREDENTIAL_CACHE_TTL  = Duration.ofDays(1);
+
   private final CertificateGenerator   certificateGenerator;
   private final ServerZkAuthOperations serverZkAuthOperations;
   private final boolean                isZkEnabled;
+  private final ExecutorService        authCredentialExecutor;
+
+  private final Cache<Pair<UUID, Integer>, byte[]> authCredentials = CacheBuilder.newBuilder()
+                                                                                 .maximumSize(AUTH_CREDENTIAL_CACHE_SIZE)
+                                                                                 .expireAfterWrite(AUTH_CREDENTIAL_CACHE_TTL)
+                                                                                 .build();
 
-  public CertificateController(CertificateGenerator certificateGenerator, ServerZkAuthOperations serverZkAuthOperations, boolean isZkEnabled) {
+  public CertificateController(CertificateGenerator certificateGenerator, ServerZkAuthOperations serverZkAuthOperations, boolean isZkEnabled, ExecutorService authCredentialExecutor) {
     this.certificateGenerator   = certificateGenerator;
     this.serverZkAuthOperations = serverZkAuthOperations;
     this.isZkEnabled            = isZkEnabled;
+    this.authCredentialExecutor = authCredentialExecutor;
   }
 
   @Timed
@@ -77,15 +108,38 @@ public class CertificateController {
     if (endRedemptionTime > Util.currentDaysSinceEpoch() + 7) throw new WebApplicationException(Response.Status.BAD_REQUEST);
     if (startRedemptionTime < Util.currentDaysSinceEpoch())   throw new WebApplicationException(Response.Status.BAD_REQUEST);
 
-    List<GroupCredentials.GroupCredential> credentials = new LinkedList<>();
+    try (Timer.Context ignored = getAuthCredentialsTimer.time()) {
+      List<CompletableFuture<GroupCredentials.GroupCredential>> futures = new ArrayList<>(endRedemptionTime - startRedemptionTime + 1);
+
+      for (int i=startRedemptionTime;i<=endRedemptionTime;i++) {
+        final int    redemptionTime = i;
+        final byte[] cached         = authCredentials.getIfPresent(new Pair<>(account.getUuid(), redemptionTime));
 
-    for (int i=startRedemptionTime;i<=endRedemptionTime;i++) {
-      credentials.add(new GroupCredentials.GroupCredential(serverZkAuthOperations.issueAuthCredential(account.getUuid(), i)
-                                                                                 .serialize(),
-                                                           i));
+        if (cached != null) {
+          authCredentialCacheHitMeter.mark();
+          futures.add(CompletableFuture.completedFuture(new GroupCredentials.GroupCredential(cached, redemptionTime)));
+        } else {
+          futures.add(CompletableFuture.supplyAsync(() -> new GroupCredentials.GroupCredential(issueAuthCredential(account.getUuid(), redemptionTime), redemptionTime), authCredentialExecutor));
+        }
+      }
+
+      List<GroupCredentials.GroupCredential> credentials = new ArrayList<>(futures.size());
+
+      for (CompletableFuture<GroupCredentials.GroupCredential> future : futures) {
+        credentials.add(future.join());
+      }
+
+      return new GroupCredentials(credentials);
     }
+  }
+
+  private byte[] issueAuthCredential(UUID uuid, int redemptionTime) {
+    try (Timer.Context ignored = issueAuthCredentialTimer.time()) {
+      final byte[] credential = serverZkAuthOperations.issueAuthCredential(uuid, redemptionTime).serialize();
+      authCredentials.put(new Pair<>(uuid, redemptionTime), credential);
 
-    return new GroupCredentials(credentials);
+      return credential;
+    }
   }
 
 }
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.AmbiguousIdentifier;
 import org.whispersystems.textsecuregcm.auth.Anonymous;
 import org.whispersystems.textsecuregcm.auth.OptionalAccess;
+import org.whispersystems.textsecuregcm.entities.AcknowledgedMessageList;
 import org.whispersystems.textsecuregcm.entities.IncomingMessage;
 import org.whispersystems.textsecuregcm.entities.IncomingMessageList;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
@@ -37,7 +38,6 @@ import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
-import org.whispersystems.textsecuregcm.util.Base64;
 import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.Util;
 import org.whispersystems.textsecuregcm.util.ua.UnrecognizedUserAgentException;
@@ -52,10 +52,12 @@ import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -77,6 +79,7 @@ public class MessageController {
   private final Meter          rejectOversizeMessageMeter       = metricRegistry.meter(name(getClass(), "rejectOversizeMessage"));
   private final Timer          sendMessageInternalTimer         = metricRegistry.timer(name(getClass(), "sendMessageInternal"));
   private final Histogram      outgoingMessageListSizeHistogram = metricRegistry.histogram(name(getClass(), "outgoingMessageListSize"));
+  private final Histogram      batchSizeBytesHistogram          = metricRegistry.histogram(name(getClass(), "envelopeBatchSizeBytes"));
 
   private final RateLimiters           rateLimiters;
   private final MessageSender          messageSender;
@@ -90,6 +93,20 @@ public class MessageController {
 
   private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
 
+  /**
+   * A batch of stored envelopes, each written as a varint length followed by the serialized {@link Envelope} (i.e. the
+   * format produced by {@link Envelope#writeDelimitedTo(java.io.OutputStream)}).
+   */
+  public static final String ENVELOPE_BATCH_MEDIA_TYPE = "application/x-signal-envelope-batch";
+
+  public static final String MORE_MESSAGES_HEADER = "X-Signal-More";
+  public static final String CURSOR_HEADER        = "X-Signal-Cursor";
+
+  private static final char CURSOR_SEPARATOR = ':';
+
+  // A generous allowance for the length prefix, type, timestamps, source device, UUID, and GUID of each envelope
+  private static final int ENVELOPE_OVERHEAD_BYTES = 128;
+
   public MessageController(RateLimiters rateLimiters,
                            MessageSender messageSender,
                            ReceiptSender receiptSender,
@@ -134,12 +151,12 @@ public class MessageController {
     for (final IncomingMessage message : messages.getMessages()) {
       int contentLength = 0;
 
-      if (!Util.isEmpty(message.getContent())) {
-        contentLength += message.getContent().length();
+      if (message.getContent() != null) {
+        contentLength += message.getContent().length;
       }
 
-      if (!Util.isEmpty(message.getBody())) {
-        contentLength += message.getBody().length();
+      if (message.getBody() != null) {
+        contentLength += message.getBody().length;
       }
 
       Metrics.summary(CONTENT_SIZE_DISTRIBUTION_NAME, UserAgentTagUtil.getUserAgentTags(userAgent)).record(contentLength);
@@ -222,6 +239,121 @@ public class MessageController {
     return outgoingMessages;
   }
 
+  /**
+   * Returns the next batch of stored messages as binary envelopes. If more messages are waiting and everything in this
+   * batch came from the database, the response carries a cursor the client can pass back to fetch the next batch before
+   * acknowledging this one. Otherwise the client should acknowledge this batch before fetching the next.
+   */
+  @Timed
+  @GET
+  @Path("/batch")
+  @Produces(ENVELOPE_BATCH_MEDIA_TYPE)
+  public Response getPendingMessageBatch(@Auth Account account,
+                                         @HeaderParam("User-Agent") String userAgent,
+                                         @QueryParam("cursor") String cursor)
+  {
+    assert account.getAuthenticatedDevice().isPresent();
+
+    final Optional<OutgoingMessageEntity> lastPersistedMessage = parseCursor(cursor);
+
+    if (!Util.isEmpty(account.getAuthenticatedDevice().get().getApnId())) {
+      RedisOperation.unchecked(() -> apnFallbackManager.cancel(account, account.getAuthenticatedDevice().get()));
+    }
+
+    final OutgoingMessageEntityList outgoingMessages = messagesManager.getMessagesForDevice(account.getNumber(),
+                                                                                            account.getUuid(),
+                                                                                            account.getAuthenticatedDevice().get().getId(),
+                                                                                            userAgent,
+                                                                                            false,
+                                                                                            lastPersistedMessage);
+
+    outgoingMessageListSizeHistogram.update(outgoingMessages.getMessages().size());
+
+    final ByteArrayOutputStream     batch                = new ByteArrayOutputStream((int)estimateMessageListSizeBytes(outgoingMessages) + outgoingMessages.getMessages().size() * ENVELOPE_OVERHEAD_BYTES);
+    Optional<OutgoingMessageEntity> lastPersistedInBatch = Optional.empty();
+    boolean                         containsCached       = false;
+
+    try {
+      for (final OutgoingMessageEntity message : outgoingMessages.getMessages()) {
+        final Envelope.Builder envelope = WebSocketConnection.newEnvelopeBuilder(message);
+
+        if (message.getGuid() != null) {
+          envelope.setServerGuid(message.getGuid().toString());
+        }
+
+        envelope.build().writeDelimitedTo(batch);
+
+        if (message.isCached()) containsCached       = true;
+        else                    lastPersistedInBatch = Optional.of(message);
+      }
+    } catch (final IOException e) {
+      // ByteArrayOutputStream never actually throws
+      throw new AssertionError(e);
+    }
+
+    batchSizeBytesHistogram.update(batch.size());
+
+    final Response.ResponseBuilder response = Response.ok(batch.toByteArray())
+                                                      .header(MORE_MESSAGES_HEADER, outgoingMessages.hasMore());
+
+    // Cached messages are always read from the head of the queue, so a cursor is only meaningful if none were returned
+    if (outgoingMessages.hasMore() && !containsCached && lastPersistedInBatch.isPresent()) {
+      response.header(CURSOR_HEADER, encodeCursor(lastPersistedInBatch.get()));
+    }
+
+    return response.build();
+  }
+
+  @Timed
+  @PUT
+  @Path("/acknowledged")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public void acknowledgeMessages(@Auth Account account, @Valid AcknowledgedMessageList acknowledgedMessages) {
+    final Device device = account.getAuthenticatedDevice().get();
+
+    final List<OutgoingMessageEntity> removedMessages = messagesManager.deleteByGuids(account.getNumber(),
+                                                                                      account.getUuid(),
+                                                                                      device.getId(),
+                                                                                      acknowledgedMessages.getGuids());
+
+    for (final OutgoingMessageEntity message : removedMessages) {
+      WebSocketConnection.recordMessageDeliveryDuration(message.getTimestamp(), device);
+
+      if (!Util.isEmpty(message.getSource()) && message.getType() != Envelope.Type.RECEIPT_VALUE) {
+        try {
+          receiptSender.sendReceipt(account, message.getSource(), message.getTimestamp());
+        } catch (NoSuchUserException e) {
+          logger.warn("Sending delivery receipt", e);
+        }
+      }
+    }
+  }
+
+  private static String encodeCursor(final OutgoingMessageEntity message) {
+    return String.valueOf(message.getTimestamp()) + CURSOR_SEPARATOR + message.getId();
+  }
+
+  private static Optional<OutgoingMessageEntity> parseCursor(final String cursor) {
+    if (Util.isEmpty(cursor)) {
+      return Optional.empty();
+    }
+
+    final int separator = cursor.indexOf(CURSOR_SEPARATOR);
+
+    try {
+      if (separator > 0) {
+        final long timestamp = Long.parseLong(cursor.substring(0, separator));
+        final long id        = Long.parseLong(cursor.substring(separator + 1));
+
+        // Only the timestamp and ID matter when resuming from a persisted message
+        return Optional.of(new OutgoingMessageEntity(id, false, null, 0, null, timestamp, null, null, 0, null, null, 0));
+      }
+    } catch (final NumberFormatException ignored) {
+    }
+
+    throw new WebApplicationException(Response.Status.BAD_REQUEST);
+  }
+
   private static long estimateMessageListSizeBytes(final OutgoingMessageEntityList messageList) {
     long size = 0;
 
@@ -379,24 +511,12 @@ public class MessageController {
   }
 
   private Optional<byte[]> getMessageBody(IncomingMessage message) {
-    if (Util.isEmpty(message.getBody())) return Optional.empty();
-
-    try {
-      return Optional.of(Base64.decode(message.getBody()));
-    } catch (IOException ioe) {
-      logger.debug("Bad B64", ioe);
-      return Optional.empty();
-    }
+    if (message.getBody() == null || message.getBody().length == 0) return Optional.empty();
+    else                                                             return Optional.of(message.getBody());
   }
 
   private Optional<byte[]> getMessageContent(IncomingMessage message) {
-    if (Util.isEmpty(message.getContent())) return Optional.empty();
-
-    try {
-      return Optional.of(Base64.decode(message.getContent()));
-    } catch (IOException ioe) {
-      logger.debug("Bad B64", ioe);
-      return Optional.empty();
-    }
+    if (message.getContent() == null || message.getContent().length == 0) return Optional.empty();
+    else                                                                   return Optional.of(message.getContent());
   }
 }
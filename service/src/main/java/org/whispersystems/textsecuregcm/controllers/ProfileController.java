@@ -6,6 +6,9 @@
 package org.whispersystems.textsecuregcm.controllers;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
 import io.dropwizard.auth.Auth;
 import org.apache.commons.codec.DecoderException;
@@ -35,6 +38,7 @@ import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.ProfilesManager;
 import org.whispersystems.textsecuregcm.storage.UsernamesManager;
 import org.whispersystems.textsecuregcm.storage.VersionedProfile;
+import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.ExactlySize;
 import org.whispersystems.textsecuregcm.util.Pair;
 
@@ -56,6 +60,11 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 @Path("/v1/profile")
@@ -63,6 +72,9 @@ public class ProfileController {
 
   private final Logger logger = LoggerFactory.getLogger(ProfileController.class);
 
+  private final MetricRegistry metricRegistry                 = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          issueProfileKeyCredentialTimer = metricRegistry.timer(name(getClass(), "issueProfileKeyCredential"));
+
   private final RateLimiters     rateLimiters;
   private final ProfilesManager  profilesManager;
   private final AccountsManager  accountsManager;
@@ -76,6 +88,8 @@ public class ProfileController {
   private final AmazonS3            s3client;
   private final String              bucket;
 
+  private final ExecutorService lookupExecutor;
+
   public ProfileController(RateLimiters rateLimiters,
                            AccountsManager accountsManager,
                            ProfilesManager profilesManager,
@@ -85,7 +99,8 @@ public class ProfileController {
                            PolicySigner policySigner,
                            String bucket,
                            ServerZkProfileOperations zkProfileOperations,
-                           boolean isZkEnabled)
+                           boolean isZkEnabled,
+                           ExecutorService lookupExecutor)
   {
     this.rateLimiters        = rateLimiters;
     this.accountsManager     = accountsManager;
@@ -97,6 +112,7 @@ public class ProfileController {
     this.policyGenerator     = policyGenerator;
     this.policySigner        = policySigner;
     this.isZkEnabled         = isZkEnabled;
+    this.lookupExecutor      = lookupExecutor;
   }
 
   @Timed
@@ -189,8 +205,12 @@ public class ProfileController {
 
       assert(accountProfile.isPresent());
 
-      Optional<String>           username = usernamesManager.get(accountProfile.get().getUuid());
+      // Only spend lookups on requests that are allowed to see the profile; the username and the versioned profile are
+      // independent of one another, so fetch the username in the background while the profile is loaded here.
+      CompletableFuture<Optional<String>> usernameFuture = CompletableFuture.supplyAsync(() -> usernamesManager.get(uuid), lookupExecutor);
+
       Optional<VersionedProfile> profile  = profilesManager.get(uuid, version);
+      Optional<String>           username = join(usernameFuture);
 
       String                     name     = profile.map(VersionedProfile::getName).orElse(accountProfile.get().getProfileName());
       String                     avatar   = profile.map(VersionedProfile::getAvatar).orElse(accountProfile.get().getAvatar());
@@ -258,9 +278,10 @@ public class ProfileController {
     try {
       ProfileKeyCommitment         commitment = new ProfileKeyCommitment(profile.get().getCommitment());
       ProfileKeyCredentialRequest  request    = new ProfileKeyCredentialRequest(Hex.decodeHex(encodedProfileCredentialRequest.get()));
-      ProfileKeyCredentialResponse response   = zkProfileOperations.issueProfileKeyCredential(request, uuid, commitment);
 
-      return Optional.of(response);
+      try (Timer.Context ignored = issueProfileKeyCredentialTimer.time()) {
+        return Optional.of(zkProfileOperations.issueProfileKeyCredential(request, uuid, commitment));
+      }
     } catch (DecoderException | VerificationFailedException e) {
       throw new WebApplicationException(e, Response.status(Response.Status.BAD_REQUEST).build());
     }
@@ -343,6 +364,15 @@ public class ProfileController {
 
   ////
 
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+      else                                          throw e;
+    }
+  }
+
   private ProfileAvatarUploadAttributes generateAvatarUploadForm(String objectName) {
     ZonedDateTime        now            = ZonedDateTime.now(ZoneOffset.UTC);
     Pair<String, String> policy         = policyGenerator.createFor(now, objectName, 10 * 1024 * 1024);
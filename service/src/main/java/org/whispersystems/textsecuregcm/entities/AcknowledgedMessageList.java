@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.entities;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+import java.util.UUID;
+
+public class AcknowledgedMessageList {
+
+  public static final int MAX_ACKNOWLEDGED_MESSAGES = 1000;
+
+  @JsonProperty
+  @NotNull
+  @Size(max = MAX_ACKNOWLEDGED_MESSAGES)
+  private List<UUID> guids;
+
+  public AcknowledgedMessageList() {}
+
+  public AcknowledgedMessageList(List<UUID> guids) {
+    this.guids = guids;
+  }
+
+  public List<UUID> getGuids() {
+    return guids;
+  }
+}
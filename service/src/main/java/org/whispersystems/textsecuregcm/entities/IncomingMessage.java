@@ -5,6 +5,8 @@
 package org.whispersystems.textsecuregcm.entities;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.whispersystems.textsecuregcm.util.ByteArrayAdapter;
 
 public class IncomingMessage {
 
@@ -21,10 +23,12 @@ public class IncomingMessage {
   private int destinationRegistrationId;
 
   @JsonProperty
-  private String body;
+  @JsonDeserialize(using = ByteArrayAdapter.DirectDeserializing.class)
+  private byte[] body;
 
   @JsonProperty
-  private String content;
+  @JsonDeserialize(using = ByteArrayAdapter.DirectDeserializing.class)
+  private byte[] content;
 
   @JsonProperty
   private String relay;
@@ -36,7 +40,7 @@ public class IncomingMessage {
     return destination;
   }
 
-  public String getBody() {
+  public byte[] getBody() {
     return body;
   }
 
@@ -56,7 +60,7 @@ public class IncomingMessage {
     return destinationRegistrationId;
   }
 
-  public String getContent() {
+  public byte[] getContent() {
     return content;
   }
 
@@ -13,7 +13,7 @@ import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.cluster.SlotHash;
-import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
@@ -150,15 +151,20 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         try (final Timer.Context ignored = setPresenceTimer.time()) {
             final String presenceKey = getPresenceKey(accountUuid, deviceId);
 
-            displacePresence(presenceKey);
+            // A client with no local presence has nothing of ours to clear; overwriting the presence key below displaces
+            // any remote holder. Skipping the clear saves several round trips per connection when many clients
+            // reconnect at once.
+            if (displacementListenersByPresenceKey.containsKey(presenceKey)) {
+                displacePresence(presenceKey);
+            }
 
             displacementListenersByPresenceKey.put(presenceKey, displacementListener);
 
             presenceCluster.useCluster(connection -> {
-                final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
+                final RedisAdvancedClusterAsyncCommands<String, String> commands = connection.async();
 
-                commands.sadd(connectedClientSetKey, presenceKey);
-                commands.set(presenceKey, managerId);
+                CompletableFuture.allOf(commands.sadd(connectedClientSetKey, presenceKey).toCompletableFuture(),
+                                        commands.set(presenceKey, managerId).toCompletableFuture()).join();
             });
 
             subscribeForRemotePresenceChanges(presenceKey);
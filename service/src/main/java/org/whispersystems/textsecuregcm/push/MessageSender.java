@@ -11,11 +11,15 @@ import org.whispersystems.textsecuregcm.metrics.PushLatencyManager;
 import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
 import org.whispersystems.textsecuregcm.util.Util;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
@@ -28,6 +32,13 @@ import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
  * MessageSender will send a push notification to the destination device if possible. Some messages may be designated
  * for "online" delivery only and will not be delivered (and clients will not be notified) if the destination device
  * isn't actively connected to a Signal server.
+ * <p/>
+ * If the destination device is connected to this server, messages are handed directly to its connection rather than
+ * making a round trip through the message cache. Ephemeral messages are never written to the cache in that case. If
+ * local delivery of durable messages is enabled, durable messages are only written to the cache if the client doesn't
+ * acknowledge them within a short timeout; otherwise, durable messages always go through the cache. Durable messages
+ * are only delivered directly once the client has received all of its stored messages, so they never overtake older
+ * messages.
  *
  * @see ClientPresenceManager
  * @see org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener
@@ -41,18 +52,26 @@ public class MessageSender implements Managed {
   private final GCMSender                  gcmSender;
   private final APNSender                  apnSender;
   private final PushLatencyManager         pushLatencyManager;
+  private final ExecutorService            localDeliveryFallbackExecutor;
+  private final boolean                    durableLocalDeliveryEnabled;
+
+  private static final String SEND_COUNTER_NAME                    = name(MessageSender.class, "sendMessage");
+  private static final String LOCAL_DELIVERY_FALLBACK_COUNTER_NAME = name(MessageSender.class, "localDeliveryFallback");
+  private static final String CHANNEL_TAG_NAME                     = "channel";
+  private static final String EPHEMERAL_TAG_NAME                   = "ephemeral";
+  private static final String CLIENT_ONLINE_TAG_NAME               = "clientOnline";
+  private static final String LOCAL_DELIVERY_TAG_NAME              = "localDelivery";
 
-  private static final String SEND_COUNTER_NAME      = name(MessageSender.class, "sendMessage");
-  private static final String CHANNEL_TAG_NAME       = "channel";
-  private static final String EPHEMERAL_TAG_NAME     = "ephemeral";
-  private static final String CLIENT_ONLINE_TAG_NAME = "clientOnline";
+  private static final Duration LOCAL_DELIVERY_ACK_TIMEOUT = Duration.ofSeconds(10);
 
   public MessageSender(ApnFallbackManager    apnFallbackManager,
                        ClientPresenceManager clientPresenceManager,
                        MessagesManager       messagesManager,
                        GCMSender             gcmSender,
                        APNSender             apnSender,
-                       PushLatencyManager    pushLatencyManager)
+                       PushLatencyManager    pushLatencyManager,
+                       ExecutorService       localDeliveryFallbackExecutor,
+                       boolean               durableLocalDeliveryEnabled)
   {
     this.apnFallbackManager    = apnFallbackManager;
     this.clientPresenceManager = clientPresenceManager;
@@ -60,6 +79,9 @@ public class MessageSender implements Managed {
     this.gcmSender             = gcmSender;
     this.apnSender             = apnSender;
     this.pushLatencyManager    = pushLatencyManager;
+
+    this.localDeliveryFallbackExecutor = localDeliveryFallbackExecutor;
+    this.durableLocalDeliveryEnabled   = durableLocalDeliveryEnabled;
   }
 
   public void sendMessage(final Account account, final Device device, final Envelope message, boolean online)
@@ -81,15 +103,42 @@ public class MessageSender implements Managed {
       throw new AssertionError();
     }
 
+    final Optional<MessageAvailabilityListener> localListener = clientPresenceManager.isLocallyPresent(account.getUuid(), device.getId())
+        ? messagesManager.getLocalMessageAvailabilityListener(account.getUuid(), device.getId())
+        : Optional.empty();
+
     final boolean clientPresent;
+    final boolean deliveredLocally;
 
     if (online) {
-      clientPresent = clientPresenceManager.isPresent(account.getUuid(), device.getId());
-
-      if (clientPresent) {
-        messagesManager.insertEphemeral(account.getUuid(), device.getId(), message);
+      if (localListener.isPresent()) {
+        // Ephemeral messages are dropped if they can't be delivered, so there's no need to involve the cache at all
+        clientPresent    = true;
+        deliveredLocally = true;
+
+        localListener.get().handleLocalMessage(message);
+      } else {
+        clientPresent    = clientPresenceManager.isPresent(account.getUuid(), device.getId());
+        deliveredLocally = false;
+
+        if (clientPresent) {
+          messagesManager.insertEphemeral(account.getUuid(), device.getId(), message);
+        }
       }
+    } else if (durableLocalDeliveryEnabled && localListener.isPresent() && localListener.get().isStoredMessageQueueDrained()) {
+      clientPresent    = true;
+      deliveredLocally = true;
+
+      localListener.get().handleLocalMessage(message)
+                         .orTimeout(LOCAL_DELIVERY_ACK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                         .whenCompleteAsync((delivered, cause) -> {
+                           if (cause != null || !delivered) {
+                             storeAfterFailedLocalDelivery(account, device, message, cause != null);
+                           }
+                         }, localDeliveryFallbackExecutor);
     } else {
+      deliveredLocally = false;
+
       messagesManager.insert(account.getUuid(), device.getId(), message);
 
       // We check for client presence after inserting the message to take a conservative view of notifications. If the
@@ -105,11 +154,22 @@ public class MessageSender implements Managed {
     final List<Tag> tags = List.of(
             Tag.of(CHANNEL_TAG_NAME, channel),
             Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(online)),
-            Tag.of(CLIENT_ONLINE_TAG_NAME, String.valueOf(clientPresent)));
+            Tag.of(CLIENT_ONLINE_TAG_NAME, String.valueOf(clientPresent)),
+            Tag.of(LOCAL_DELIVERY_TAG_NAME, String.valueOf(deliveredLocally)));
 
     Metrics.counter(SEND_COUNTER_NAME, tags).increment();
   }
 
+  private void storeAfterFailedLocalDelivery(final Account account, final Device device, final Envelope message, final boolean timedOut) {
+    Metrics.counter(LOCAL_DELIVERY_FALLBACK_COUNTER_NAME, "timeout", String.valueOf(timedOut)).increment();
+
+    messagesManager.insert(account.getUuid(), device.getId(), message);
+
+    if (!clientPresenceManager.isPresent(account.getUuid(), device.getId())) {
+      sendNewMessageNotification(account, device);
+    }
+  }
+
   public void sendNewMessageNotification(final Account account, final Device device) {
     if (!Util.isEmpty(device.getGcmId())) {
       sendGcmNotification(account, device);
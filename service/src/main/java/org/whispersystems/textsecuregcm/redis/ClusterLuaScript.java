@@ -10,6 +10,7 @@ import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import org.slf4j.Logger;
@@ -20,6 +21,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 public class ClusterLuaScript {
 
@@ -75,15 +79,18 @@ public class ClusterLuaScript {
     }
 
     public Object executeBinary(final List<byte[]> keys, final List<byte[]> args) {
+        final byte[][] keyArray = keys.toArray(BYTE_ARRAY_ARRAY);
+        final byte[][] argArray = args.toArray(BYTE_ARRAY_ARRAY);
+
         return redisCluster.withBinaryCluster(connection -> {
             try {
                 final RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands = connection.sync();
 
                 try {
-                    return binaryCommands.evalsha(sha, scriptOutputType, keys.toArray(BYTE_ARRAY_ARRAY), args.toArray(BYTE_ARRAY_ARRAY));
+                    return binaryCommands.evalsha(sha, scriptOutputType, keyArray, argArray);
                 } catch (final RedisNoScriptException e) {
                     reloadScript();
-                    return binaryCommands.evalsha(sha, scriptOutputType, keys.toArray(BYTE_ARRAY_ARRAY), args.toArray(BYTE_ARRAY_ARRAY));
+                    return binaryCommands.evalsha(sha, scriptOutputType, keyArray, argArray);
                 }
             } catch (final Exception e) {
                 log.warn("Failed to execute script", e);
@@ -92,6 +99,39 @@ public class ClusterLuaScript {
         });
     }
 
+    /**
+     * Dispatches this script without waiting for a reply. Callers that need to run the same script against many keys
+     * can issue all of their calls before waiting on any of them, which lets the underlying connection pipeline the
+     * calls instead of paying a full round trip for each one.
+     */
+    public CompletableFuture<Object> executeBinaryAsync(final List<byte[]> keys, final List<byte[]> args) {
+        final byte[][] keyArray = keys.toArray(BYTE_ARRAY_ARRAY);
+        final byte[][] argArray = args.toArray(BYTE_ARRAY_ARRAY);
+
+        return redisCluster.withBinaryCluster(connection -> {
+            final RedisAdvancedClusterAsyncCommands<byte[], byte[]> binaryCommands = connection.async();
+
+            return binaryCommands.evalsha(sha, scriptOutputType, keyArray, argArray).toCompletableFuture()
+                    .handle((result, cause) -> {
+                        if (cause == null) {
+                            return CompletableFuture.completedFuture(result);
+                        }
+
+                        final Throwable unwrapped = cause instanceof CompletionException ? cause.getCause() : cause;
+
+                        if (unwrapped instanceof RedisNoScriptException) {
+                            // We're on an IO thread here and can't block to reload the script; sending the full script
+                            // instead will also load it for future calls.
+                            return binaryCommands.eval(script, scriptOutputType, keyArray, argArray).toCompletableFuture();
+                        }
+
+                        log.warn("Failed to execute script", unwrapped);
+                        return CompletableFuture.failedFuture(unwrapped);
+                    })
+                    .thenCompose(Function.identity());
+        });
+    }
+
     private void reloadScript() {
         redisCluster.useCluster(connection -> connection.sync().upstream().commands().scriptLoad(script));
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.redis;
+
+import io.lettuce.core.cluster.SlotHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Builds binary Redis keys of the form {@code prefix::{hashTag}} that all share one hash tag. The hash tag is encoded
+ * once, and each key is written straight into an exactly-sized array, so building several keys for the same entity
+ * (for example, a device's message queue and its metadata) costs one small allocation per key rather than a string
+ * concatenation and an encoding pass each. Since every key shares a hash tag, they all map to the same cluster slot,
+ * which is computed at most once.
+ *
+ * @see <a href="https://redis.io/topics/cluster-spec#keys-hash-tags">Redis Cluster Specification - Keys hash tags</a>
+ */
+public class RedisKeyBuilder {
+
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int      CACHED_DEVICE_ID_COUNT = 256;
+  private static final byte[][] DEVICE_ID_DIGITS       = new byte[CACHED_DEVICE_ID_COUNT][];
+
+  static {
+    for (int deviceId = 0; deviceId < CACHED_DEVICE_ID_COUNT; deviceId++) {
+      DEVICE_ID_DIGITS[deviceId] = Integer.toString(deviceId).getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  private final byte[] hashTag;
+  private       int    slot = -1;
+
+  private RedisKeyBuilder(final byte[] hashTag) {
+    this.hashTag = hashTag;
+  }
+
+  /**
+   * Encodes a key prefix; callers should encode their prefixes once and keep them in constants.
+   *
+   * @param name the name that precedes the hash tag in each key (e.g. {@code user_queue})
+   *
+   * @return the name, followed by {@code ::} and the opening brace of the hash tag, as bytes
+   */
+  public static byte[] prefix(final String name) {
+    return (name + "::{").getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a builder for keys whose hash tag is {@code accountUuid::deviceId}
+   */
+  public static RedisKeyBuilder forDevice(final UUID accountUuid, final long deviceId) {
+    final byte[] deviceIdDigits = deviceId >= 0 && deviceId < CACHED_DEVICE_ID_COUNT
+        ? DEVICE_ID_DIGITS[(int)deviceId]
+        : Long.toString(deviceId).getBytes(StandardCharsets.US_ASCII);
+
+    final byte[] hashTag = new byte[36 + 2 + deviceIdDigits.length];
+
+    writeUuid(accountUuid, hashTag);
+    hashTag[36] = ':';
+    hashTag[37] = ':';
+    System.arraycopy(deviceIdDigits, 0, hashTag, 38, deviceIdDigits.length);
+
+    return new RedisKeyBuilder(hashTag);
+  }
+
+  public static RedisKeyBuilder forHashTag(final String hashTag) {
+    return new RedisKeyBuilder(hashTag.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param prefix a prefix produced by {@link #prefix(String)}
+   *
+   * @return the key {@code prefix::{hashTag}}
+   */
+  public byte[] build(final byte[] prefix) {
+    final byte[] key = new byte[prefix.length + hashTag.length + 1];
+
+    System.arraycopy(prefix, 0, key, 0, prefix.length);
+    System.arraycopy(hashTag, 0, key, prefix.length, hashTag.length);
+    key[key.length - 1] = '}';
+
+    return key;
+  }
+
+  /**
+   * @return the cluster slot shared by every key this builder produces
+   */
+  public int getSlot() {
+    if (slot < 0) {
+      // Keys with a non-empty hash tag are slotted by the tag alone
+      slot = SlotHash.getSlot(hashTag);
+    }
+
+    return slot;
+  }
+
+  private static void writeUuid(final UUID uuid, final byte[] destination) {
+    final long mostSignificantBits  = uuid.getMostSignificantBits();
+    final long leastSignificantBits = uuid.getLeastSignificantBits();
+
+    // xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx, matching UUID#toString
+    writeHex(mostSignificantBits >>> 32, 8, destination, 0);
+    destination[8] = '-';
+    writeHex(mostSignificantBits >>> 16, 4, destination, 9);
+    destination[13] = '-';
+    writeHex(mostSignificantBits, 4, destination, 14);
+    destination[18] = '-';
+    writeHex(leastSignificantBits >>> 48, 4, destination, 19);
+    destination[23] = '-';
+    writeHex(leastSignificantBits, 12, destination, 24);
+  }
+
+  private static void writeHex(long value, final int digits, final byte[] destination, final int offset) {
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      destination[i] = HEX_DIGITS[(int)(value & 0xf)];
+      value >>>= 4;
+    }
+  }
+}
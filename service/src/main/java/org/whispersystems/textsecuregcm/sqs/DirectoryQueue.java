@@ -12,18 +12,23 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.configuration.SqsConfiguration;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.util.Constants;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,10 +40,15 @@ public class DirectoryQueue {
 
   private static final Logger  logger = LoggerFactory.getLogger(DirectoryQueue.class);
 
-  private final MetricRegistry metricRegistry    = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
-  private final Meter          serviceErrorMeter = metricRegistry.meter(name(DirectoryQueue.class, "serviceError"));
-  private final Meter          clientErrorMeter  = metricRegistry.meter(name(DirectoryQueue.class, "clientError"));
-  private final Timer          sendMessageTimer  = metricRegistry.timer(name(DirectoryQueue.class, "sendMessage"));
+  // The most messages SQS will accept in a single batch request
+  private static final int MAX_BATCH_SIZE = 10;
+
+  private final MetricRegistry metricRegistry         = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          serviceErrorMeter      = metricRegistry.meter(name(DirectoryQueue.class, "serviceError"));
+  private final Meter          clientErrorMeter       = metricRegistry.meter(name(DirectoryQueue.class, "clientError"));
+  private final Meter          batchEntryFailureMeter = metricRegistry.meter(name(DirectoryQueue.class, "batchEntryFailure"));
+  private final Timer          sendMessageTimer       = metricRegistry.timer(name(DirectoryQueue.class, "sendMessage"));
+  private final Timer          sendMessageBatchTimer  = metricRegistry.timer(name(DirectoryQueue.class, "sendMessageBatch"));
 
   private final List<String>   queueUrls;
   private final AmazonSQS      sqs;
@@ -61,16 +71,42 @@ public class DirectoryQueue {
     sendMessage(account.isEnabled() && account.isDiscoverableByPhoneNumber() ? "add" : "delete", account.getUuid(), account.getNumber());
   }
 
+  public void refreshRegisteredUsers(final List<Account> accounts) {
+    for (final List<Account> batch : Lists.partition(accounts, MAX_BATCH_SIZE)) {
+      final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+
+      for (int i = 0; i < batch.size(); i++) {
+        final Account account = batch.get(i);
+        final String  action  = account.isEnabled() && account.isDiscoverableByPhoneNumber() ? "add" : "delete";
+
+        entries.add(new SendMessageBatchRequestEntry()
+                .withId(String.valueOf(i))
+                .withMessageBody("-")
+                .withMessageDeduplicationId(UUID.randomUUID().toString())
+                .withMessageGroupId(account.getNumber())
+                .withMessageAttributes(getMessageAttributes(action, account.getUuid(), account.getNumber())));
+      }
+
+      sendMessageBatch(entries);
+    }
+  }
+
   public void deleteAccount(final Account account) {
     sendMessage("delete", account.getUuid(), account.getNumber());
   }
 
-  private void sendMessage(String action, UUID uuid, String number) {
+  private Map<String, MessageAttributeValue> getMessageAttributes(String action, UUID uuid, String number) {
     final Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
     messageAttributes.put("id", new MessageAttributeValue().withDataType("String").withStringValue(number));
     messageAttributes.put("uuid", new MessageAttributeValue().withDataType("String").withStringValue(uuid.toString()));
     messageAttributes.put("action", new MessageAttributeValue().withDataType("String").withStringValue(action));
 
+    return messageAttributes;
+  }
+
+  private void sendMessage(String action, UUID uuid, String number) {
+    final Map<String, MessageAttributeValue> messageAttributes = getMessageAttributes(action, uuid, number);
+
     for (final String queueUrl : queueUrls) {
       final SendMessageRequest sendMessageRequest = new SendMessageRequest()
               .withQueueUrl(queueUrl)
@@ -92,4 +128,27 @@ public class DirectoryQueue {
     }
   }
 
+  private void sendMessageBatch(final List<SendMessageBatchRequestEntry> entries) {
+    for (final String queueUrl : queueUrls) {
+      final SendMessageBatchRequest sendMessageBatchRequest = new SendMessageBatchRequest()
+              .withQueueUrl(queueUrl)
+              .withEntries(entries);
+      try (final Timer.Context ignored = sendMessageBatchTimer.time()) {
+        final SendMessageBatchResult result = sqs.sendMessageBatch(sendMessageBatchRequest);
+
+        if (!result.getFailed().isEmpty()) {
+          batchEntryFailureMeter.mark(result.getFailed().size());
+          logger.warn("sqs batch entries failed: {}", result.getFailed());
+        }
+      } catch (AmazonServiceException ex) {
+        serviceErrorMeter.mark();
+        logger.warn("sqs service error: ", ex);
+      } catch (AmazonClientException ex) {
+        clientErrorMeter.mark();
+        logger.warn("sqs client error: ", ex);
+      } catch (Throwable t) {
+        logger.warn("sqs unexpected error: ", t);
+      }
+    }
+  }
 }
@@ -9,11 +9,13 @@ import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jdbi.v3.core.statement.PreparedBatch;
 import org.jdbi.v3.core.transaction.TransactionIsolationLevel;
 import org.whispersystems.textsecuregcm.storage.mappers.AccountRowMapper;
 import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -32,8 +34,10 @@ public class Accounts {
   private final MetricRegistry metricRegistry        = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
   private final Timer          createTimer           = metricRegistry.timer(name(Accounts.class, "create"          ));
   private final Timer          updateTimer           = metricRegistry.timer(name(Accounts.class, "update"          ));
+  private final Timer          updateAllTimer        = metricRegistry.timer(name(Accounts.class, "updateAll"       ));
   private final Timer          getByNumberTimer      = metricRegistry.timer(name(Accounts.class, "getByNumber"     ));
   private final Timer          getByUuidTimer        = metricRegistry.timer(name(Accounts.class, "getByUuid"       ));
+  private final Timer          getAllByUuidTimer     = metricRegistry.timer(name(Accounts.class, "getAllByUuid"    ));
   private final Timer          getAllFromTimer       = metricRegistry.timer(name(Accounts.class, "getAllFrom"      ));
   private final Timer          getAllFromOffsetTimer = metricRegistry.timer(name(Accounts.class, "getAllFromOffset"));
   private final Timer          deleteTimer           = metricRegistry.timer(name(Accounts.class, "delete"          ));
@@ -44,6 +48,7 @@ public class Accounts {
   public Accounts(FaultTolerantDatabase database) {
     this.database = database;
     this.database.getDatabase().registerRowMapper(new AccountRowMapper());
+    this.database.getDatabase().registerArrayType(UUID.class, "uuid");
   }
 
   public boolean create(Account account) {
@@ -78,6 +83,24 @@ public class Accounts {
     }));
   }
 
+  public void updateAll(List<Account> accounts) {
+    database.use(jdbi -> jdbi.useTransaction(handle -> {
+      try (Timer.Context ignored = updateAllTimer.time()) {
+        final PreparedBatch batch = handle.prepareBatch("UPDATE accounts SET " + DATA + " = CAST(:data AS json) WHERE " + UID + " = :uuid");
+
+        for (final Account account : accounts) {
+          batch.bind("uuid", account.getUuid())
+               .bind("data", mapper.writeValueAsString(account))
+               .add();
+        }
+
+        batch.execute();
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }));
+  }
+
   public Optional<Account> get(String number) {
     return database.with(jdbi -> jdbi.withHandle(handle -> {
       try (Timer.Context ignored = getByNumberTimer.time()) {
@@ -100,6 +123,17 @@ public class Accounts {
     }));
   }
 
+  public List<Account> getAll(Collection<UUID> uuids) {
+    return database.with(jdbi -> jdbi.withHandle(handle -> {
+      try (Timer.Context ignored = getAllByUuidTimer.time()) {
+        return handle.createQuery("SELECT * FROM accounts WHERE " + UID + " = ANY(:uuids)")
+                     .bindArray("uuids", UUID.class, uuids)
+                     .mapTo(Account.class)
+                     .list();
+      }
+    }));
+  }
+
   public List<Account> getAllFrom(UUID from, int length) {
     return database.with(jdbi -> jdbi.withHandle(handle -> {
       try (Timer.Context ignored = getAllFromOffsetTimer.time()) {
@@ -10,6 +10,7 @@ import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisException;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import io.micrometer.core.instrument.Metrics;
@@ -24,25 +25,34 @@ import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.Util;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
 public class AccountsManager {
 
-  private static final MetricRegistry metricRegistry   = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
-  private static final Timer          createTimer      = metricRegistry.timer(name(AccountsManager.class, "create"     ));
-  private static final Timer          updateTimer      = metricRegistry.timer(name(AccountsManager.class, "update"     ));
-  private static final Timer          getByNumberTimer = metricRegistry.timer(name(AccountsManager.class, "getByNumber"));
-  private static final Timer          getByUuidTimer   = metricRegistry.timer(name(AccountsManager.class, "getByUuid"  ));
-  private static final Timer          deleteTimer      = metricRegistry.timer(name(AccountsManager.class, "delete"));
-
-  private static final Timer redisSetTimer       = metricRegistry.timer(name(AccountsManager.class, "redisSet"      ));
-  private static final Timer redisNumberGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisNumberGet"));
-  private static final Timer redisUuidGetTimer   = metricRegistry.timer(name(AccountsManager.class, "redisUuidGet"  ));
-  private static final Timer redisDeleteTimer    = metricRegistry.timer(name(AccountsManager.class, "redisDelete"   ));
+  private static final MetricRegistry metricRegistry    = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private static final Timer          createTimer       = metricRegistry.timer(name(AccountsManager.class, "create"      ));
+  private static final Timer          updateTimer       = metricRegistry.timer(name(AccountsManager.class, "update"      ));
+  private static final Timer          updateAllTimer    = metricRegistry.timer(name(AccountsManager.class, "updateAll"   ));
+  private static final Timer          getByNumberTimer  = metricRegistry.timer(name(AccountsManager.class, "getByNumber" ));
+  private static final Timer          getByUuidTimer    = metricRegistry.timer(name(AccountsManager.class, "getByUuid"   ));
+  private static final Timer          getAllByUuidTimer = metricRegistry.timer(name(AccountsManager.class, "getAllByUuid"));
+  private static final Timer          deleteTimer       = metricRegistry.timer(name(AccountsManager.class, "delete"));
+
+  private static final Timer redisSetTimer        = metricRegistry.timer(name(AccountsManager.class, "redisSet"       ));
+  private static final Timer redisSetAllTimer     = metricRegistry.timer(name(AccountsManager.class, "redisSetAll"    ));
+  private static final Timer redisNumberGetTimer  = metricRegistry.timer(name(AccountsManager.class, "redisNumberGet" ));
+  private static final Timer redisUuidGetTimer    = metricRegistry.timer(name(AccountsManager.class, "redisUuidGet"   ));
+  private static final Timer redisUuidGetAllTimer = metricRegistry.timer(name(AccountsManager.class, "redisUuidGetAll"));
+  private static final Timer redisDeleteTimer     = metricRegistry.timer(name(AccountsManager.class, "redisDelete"    ));
 
   private static final String DELETE_COUNTER_NAME      = name(AccountsManager.class, "deleteCounter");
   private static final String COUNTRY_CODE_TAG_NAME    = "country";
@@ -103,6 +113,23 @@ public class AccountsManager {
     }
   }
 
+  /**
+   * Writes back a batch of modified accounts. The accounts are written to the database in a single batch, the cache is
+   * refreshed with a single multi-key write, and directory changes are pipelined; callers that modify many accounts at
+   * once (like account crawler listeners) should prefer this to calling {@link #update(Account)} for each account.
+   */
+  public void updateAll(List<Account> accounts) {
+    if (accounts.isEmpty()) {
+      return;
+    }
+
+    try (Timer.Context ignored = updateAllTimer.time()) {
+      redisSetAll(accounts);
+      databaseUpdateAll(accounts);
+      updateDirectory(accounts);
+    }
+  }
+
   public Optional<Account> get(AmbiguousIdentifier identifier) {
     if      (identifier.hasNumber()) return get(identifier.getNumber());
     else if (identifier.hasUuid())   return get(identifier.getUuid());
@@ -135,6 +162,38 @@ public class AccountsManager {
     }
   }
 
+  /**
+   * Loads all of the accounts with the given UUIDs that exist. Cached accounts are read with a single multi-key read,
+   * all cache misses are loaded from the database with a single query, and any accounts loaded from the database are
+   * written back to the cache together.
+   *
+   * @return a map of UUIDs to accounts; UUIDs without a corresponding account are absent from the map
+   */
+  public Map<UUID, Account> getAll(Collection<UUID> uuids) {
+    if (uuids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    try (Timer.Context ignored = getAllByUuidTimer.time()) {
+      final Map<UUID, Account> accounts = redisGetAll(uuids);
+
+      final List<UUID> missingUuids = uuids.stream()
+                                           .distinct()
+                                           .filter(uuid -> !accounts.containsKey(uuid))
+                                           .collect(Collectors.toList());
+
+      if (!missingUuids.isEmpty()) {
+        final List<Account> databaseAccounts = databaseGetAll(missingUuids);
+
+        if (!databaseAccounts.isEmpty()) {
+          redisSetAll(databaseAccounts);
+          databaseAccounts.forEach(account -> accounts.put(account.getUuid(), account));
+        }
+      }
+
+      return accounts;
+    }
+  }
 
   public List<Account> getAllFrom(int length) {
     return accounts.getAllFrom(length);
@@ -172,6 +231,24 @@ public class AccountsManager {
     }
   }
 
+  private void updateDirectory(List<Account> accounts) {
+    final DirectoryManager.BatchOperationHandle batchOperation = directory.startBatchOperation();
+
+    try {
+      for (final Account account : accounts) {
+        if (account.isEnabled()) {
+          byte[]        token         = Util.getContactToken(account.getNumber());
+          ClientContact clientContact = new ClientContact(token, null, true, true);
+          directory.add(batchOperation, clientContact);
+        } else {
+          directory.remove(batchOperation, account.getNumber());
+        }
+      }
+    } finally {
+      directory.stopBatchOperation(batchOperation);
+    }
+  }
+
   private String getAccountMapKey(String number) {
     return "AccountMap::" + number;
   }
@@ -195,6 +272,22 @@ public class AccountsManager {
     }
   }
 
+  private void redisSetAll(List<Account> accounts) {
+    try (Timer.Context ignored = redisSetAllTimer.time()) {
+      final Map<String, String> values = new HashMap<>();
+
+      for (final Account account : accounts) {
+        values.put(getAccountMapKey(account.getNumber()), account.getUuid().toString());
+        values.put(getAccountEntityKey(account.getUuid()), mapper.writeValueAsString(account));
+      }
+
+      // The cluster client splits multi-key writes by slot and sends each part in parallel
+      cacheCluster.useCluster(connection -> connection.sync().mset(values));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   private Optional<Account> redisGet(String number) {
     try (Timer.Context ignored = redisNumberGetTimer.time()) {
       final String uuid = cacheCluster.withCluster(connection -> connection.sync().get(getAccountMapKey(number)));
@@ -231,6 +324,37 @@ public class AccountsManager {
     }
   }
 
+  private Map<UUID, Account> redisGetAll(Collection<UUID> uuids) {
+    final Map<UUID, Account> accounts = new HashMap<>();
+
+    try (Timer.Context ignored = redisUuidGetAllTimer.time()) {
+      final Map<String, UUID> uuidsByKey = new HashMap<>();
+      uuids.forEach(uuid -> uuidsByKey.put(getAccountEntityKey(uuid), uuid));
+
+      // The cluster client splits multi-key reads by slot and sends each part in parallel
+      final List<KeyValue<String, String>> values =
+          cacheCluster.withCluster(connection -> connection.sync().mget(uuidsByKey.keySet().toArray(new String[0])));
+
+      for (final KeyValue<String, String> keyValue : values) {
+        if (keyValue.hasValue()) {
+          try {
+            final UUID    uuid    = uuidsByKey.get(keyValue.getKey());
+            final Account account = mapper.readValue(keyValue.getValue(), Account.class);
+            account.setUuid(uuid);
+
+            accounts.put(uuid, account);
+          } catch (IOException e) {
+            logger.warn("Deserialization error", e);
+          }
+        }
+      }
+    } catch (RedisException e) {
+      logger.warn("Redis failure", e);
+    }
+
+    return accounts;
+  }
+
   private void redisDelete(final Account account) {
     try (final Timer.Context ignored = redisDeleteTimer.time()) {
       cacheCluster.useCluster(connection -> connection.sync().del(getAccountMapKey(account.getNumber()), getAccountEntityKey(account.getUuid())));
@@ -245,6 +369,10 @@ public class AccountsManager {
     return accounts.get(uuid);
   }
 
+  private List<Account> databaseGetAll(Collection<UUID> uuids) {
+    return accounts.getAll(uuids);
+  }
+
   private boolean databaseCreate(Account account) {
     return accounts.create(account);
   }
@@ -253,6 +381,10 @@ public class AccountsManager {
     accounts.update(account);
   }
 
+  private void databaseUpdateAll(List<Account> accounts) {
+    this.accounts.updateAll(accounts);
+  }
+
   private void databaseDelete(final Account account) {
     accounts.delete(account.getUuid());
   }
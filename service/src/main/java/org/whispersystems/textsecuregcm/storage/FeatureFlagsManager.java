@@ -11,10 +11,9 @@ import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 
 import java.time.Duration;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -35,8 +34,8 @@ public class FeatureFlagsManager implements Managed {
     private final FeatureFlags                          featureFlagDatabase;
     private final ScheduledExecutorService              refreshExecutorService;
     private       ScheduledFuture<?>                    refreshFuture;
-    private final AtomicReference<Map<String, Boolean>> featureFlags = new AtomicReference<>(Collections.emptyMap());
-    private final Set<Gauge>                            gauges = new HashSet<>();
+    private final AtomicReference<Map<String, Boolean>> featureFlags = new AtomicReference<>(Map.of());
+    private final Map<String, Gauge>                    gauges       = new HashMap<>();
 
     private static final String GAUGE_NAME    = "status";
     private static final String FLAG_TAG_NAME = "flag";
@@ -79,24 +78,30 @@ public class FeatureFlagsManager implements Managed {
     }
 
     @VisibleForTesting
-    void refreshFeatureFlags() {
-        final Map<String, Boolean> refreshedFeatureFlags = featureFlagDatabase.getFeatureFlags();
+    synchronized void refreshFeatureFlags() {
+        final Map<String, Boolean> refreshedFeatureFlags = Map.copyOf(featureFlagDatabase.getFeatureFlags());
 
-        featureFlags.set(Collections.unmodifiableMap(refreshedFeatureFlags));
+        featureFlags.set(refreshedFeatureFlags);
 
-        for (final Gauge gauge : gauges) {
-            Metrics.globalRegistry.remove(gauge);
-        }
-
-        gauges.clear();
+        // Gauges read the current snapshot, so they only need to change when a flag appears or disappears
+        for (final Iterator<Map.Entry<String, Gauge>> iterator = gauges.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<String, Gauge> entry = iterator.next();
 
-        for (final Map.Entry<String, Boolean> entry : refreshedFeatureFlags.entrySet()) {
-            final String  featureFlag = entry.getKey();
-            final boolean active      = entry.getValue();
+            if (!refreshedFeatureFlags.containsKey(entry.getKey())) {
+                Metrics.globalRegistry.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
 
-            gauges.add(Gauge.builder(name(getClass(), GAUGE_NAME), () -> active ? 1 : 0)
-                            .tag(FLAG_TAG_NAME, featureFlag)
-                            .register(Metrics.globalRegistry));
+        for (final String featureFlag : refreshedFeatureFlags.keySet()) {
+            gauges.computeIfAbsent(featureFlag, flag -> Gauge.builder(name(getClass(), GAUGE_NAME), this, manager -> manager.isFeatureFlagActive(flag) ? 1 : 0)
+                                                             .tag(FLAG_TAG_NAME, flag)
+                                                             .register(Metrics.globalRegistry));
         }
     }
+
+    @VisibleForTesting
+    synchronized Map<String, Gauge> getGauges() {
+        return Map.copyOf(gauges);
+    }
 }
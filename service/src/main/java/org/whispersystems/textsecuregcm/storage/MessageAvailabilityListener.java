@@ -5,10 +5,17 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A message availability listener is notified when new messages are available for a specific device for a specific
  * account. Availability listeners are also notified when messages are moved from the message cache to long-term storage
  * as an optimization hint to implementing classes.
+ * <p/>
+ * Listeners that can deliver messages directly to a connected client may also accept messages from senders on the same
+ * host, bypassing the message cache entirely.
  */
 public interface MessageAvailabilityListener {
 
@@ -17,4 +24,27 @@ public interface MessageAvailabilityListener {
     void handleNewEphemeralMessageAvailable();
 
     void handleMessagesPersisted();
+
+    /**
+     * Attempts to deliver a message directly to the client associated with this listener.
+     *
+     * @param message the message to deliver
+     *
+     * @return a future that yields {@code true} if the client acknowledged the message or {@code false} if the message
+     * could not be delivered and must be stored by the caller
+     */
+    default CompletableFuture<Boolean> handleLocalMessage(final Envelope message) {
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Indicates whether a durable message handed to {@link #handleLocalMessage(Envelope)} would reach the client in
+     * order. A message delivered directly skips the client's stored messages, so it must not be delivered directly
+     * while any of those are still waiting to be sent.
+     *
+     * @return {@code true} if the client has already received every stored message and no stored messages are pending
+     */
+    default boolean isStoredMessageQueueDrained() {
+        return false;
+    }
 }
@@ -21,8 +21,10 @@ import org.whispersystems.textsecuregcm.util.Util;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
@@ -37,13 +39,14 @@ public class MessagePersister implements Managed {
     private final    Thread[]     workerThreads = new Thread[WORKER_THREAD_COUNT];
     private volatile boolean      running;
 
-    private final MetricRegistry metricRegistry             = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
-    private final Timer          getQueuesTimer             = metricRegistry.timer(name(MessagePersister.class, "getQueues"));
-    private final Timer          persistQueueTimer          = metricRegistry.timer(name(MessagePersister.class, "persistQueue"));
-    private final Meter          persistMessageMeter        = metricRegistry.meter(name(MessagePersister.class, "persistMessage"));
-    private final Meter          persistQueueExceptionMeter = metricRegistry.meter(name(MessagePersister.class, "persistQueueException"));
-    private final Histogram      queueCountHistogram        = metricRegistry.histogram(name(MessagePersister.class, "queueCount"));
-    private final Histogram      queueSizeHistogram         = metricRegistry.histogram(name(MessagePersister.class, "queueSize"));
+    private final MetricRegistry metricRegistry               = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+    private final Timer          getQueuesTimer               = metricRegistry.timer(name(MessagePersister.class, "getQueues"));
+    private final Timer          persistQueueTimer            = metricRegistry.timer(name(MessagePersister.class, "persistQueue"));
+    private final Meter          persistMessageMeter          = metricRegistry.meter(name(MessagePersister.class, "persistMessage"));
+    private final Meter          persistQueueExceptionMeter   = metricRegistry.meter(name(MessagePersister.class, "persistQueueException"));
+    private final Meter          getAllAccountsExceptionMeter = metricRegistry.meter(name(MessagePersister.class, "getAllAccountsException"));
+    private final Histogram      queueCountHistogram          = metricRegistry.histogram(name(MessagePersister.class, "queueCount"));
+    private final Histogram      queueSizeHistogram           = metricRegistry.histogram(name(MessagePersister.class, "queueSize"));
 
     static final int QUEUE_BATCH_LIMIT   = 100;
     static final int MESSAGE_BATCH_LIMIT = 100;
@@ -115,12 +118,31 @@ public class MessagePersister implements Managed {
                 queuesToPersist = messagesCache.getQueuesToPersist(slot, currentTime.minus(persistDelay), QUEUE_BATCH_LIMIT);
             }
 
+            // The queues in this batch have already been removed from the persistence index, so a failed bulk lookup
+            // must not take them all down with it; fall back to looking up accounts one queue at a time instead.
+            Optional<Map<UUID, Account>> maybeAccountsByUuid;
+
+            try {
+                maybeAccountsByUuid = Optional.of(accountsManager.getAll(queuesToPersist.stream()
+                        .map(MessagesCache::getAccountUuidFromQueueName)
+                        .collect(Collectors.toSet())));
+            } catch (final Exception e) {
+                getAllAccountsExceptionMeter.mark();
+                logger.warn("Failed to look up accounts for {} queues; will look up accounts individually", queuesToPersist.size(), e);
+
+                maybeAccountsByUuid = Optional.empty();
+            }
+
             for (final String queue : queuesToPersist) {
                 final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queue);
                 final long deviceId    = MessagesCache.getDeviceIdFromQueueName(queue);
 
                 try {
-                    persistQueue(accountUuid, deviceId);
+                    final Optional<Account> maybeAccount = maybeAccountsByUuid.isPresent()
+                            ? Optional.ofNullable(maybeAccountsByUuid.get().get(accountUuid))
+                            : accountsManager.get(accountUuid);
+
+                    persistQueue(maybeAccount, accountUuid, deviceId);
                 } catch (final Exception e) {
                     persistQueueExceptionMeter.mark();
                     logger.warn("Failed to persist queue {}::{}; will schedule for retry", accountUuid, deviceId, e);
@@ -135,10 +157,8 @@ public class MessagePersister implements Managed {
         return queuesPersisted;
     }
 
-    @VisibleForTesting
-    void persistQueue(final UUID accountUuid, final long deviceId) {
-        final Optional<Account> maybeAccount = accountsManager.get(accountUuid);
-
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private void persistQueue(final Optional<Account> maybeAccount, final UUID accountUuid, final long deviceId) {
         final String accountNumber;
 
         if (maybeAccount.isPresent()) {
@@ -43,12 +43,16 @@ public class Messages {
   public static final String MESSAGE            = "message";
   public static final String CONTENT            = "content";
 
+  private static final String LOAD_COLUMNS = String.join(", ", ID, GUID, TYPE, RELAY, TIMESTAMP, SERVER_TIMESTAMP, SOURCE, SOURCE_UUID, SOURCE_DEVICE, MESSAGE, CONTENT);
+
   private final MetricRegistry metricRegistry      = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
   private final Timer          storeTimer          = metricRegistry.timer(name(Messages.class, "store"         ));
   private final Timer          loadTimer           = metricRegistry.timer(name(Messages.class, "load"          ));
+  private final Timer          loadAfterTimer      = metricRegistry.timer(name(Messages.class, "loadAfter"     ));
   private final Timer          hasMessagesTimer    = metricRegistry.timer(name(Messages.class, "hasMessages"   ));
   private final Timer          removeBySourceTimer = metricRegistry.timer(name(Messages.class, "removeBySource"));
   private final Timer          removeByGuidTimer   = metricRegistry.timer(name(Messages.class, "removeByGuid"  ));
+  private final Timer          removeByGuidsTimer  = metricRegistry.timer(name(Messages.class, "removeByGuids" ));
   private final Timer          removeByIdTimer     = metricRegistry.timer(name(Messages.class, "removeById"    ));
   private final Timer          clearDeviceTimer    = metricRegistry.timer(name(Messages.class, "clearDevice"   ));
   private final Timer          clearTimer          = metricRegistry.timer(name(Messages.class, "clear"         ));
@@ -68,6 +72,7 @@ public class Messages {
     this.database = database;
     this.database.getDatabase().registerRowMapper(new OutgoingMessageEntityRowMapper());
     this.database.getDatabase().registerArgument(new UUIDArgumentFactory());
+    this.database.getDatabase().registerArrayType(UUID.class, "uuid");
   }
 
   public void store(final List<Envelope> messages, final String destination, final long destinationDevice) {
@@ -105,7 +110,7 @@ public class Messages {
   public List<OutgoingMessageEntity> load(String destination, long destinationDevice) {
     return database.with(jdbi-> jdbi.withHandle(handle -> {
       try (Timer.Context ignored = loadTimer.time()) {
-        return handle.createQuery("SELECT * FROM messages WHERE " + DESTINATION + " = :destination AND " + DESTINATION_DEVICE + " = :destination_device ORDER BY " + TIMESTAMP + " ASC LIMIT " + RESULT_SET_CHUNK_SIZE)
+        return handle.createQuery("SELECT " + LOAD_COLUMNS + " FROM messages WHERE " + DESTINATION + " = :destination AND " + DESTINATION_DEVICE + " = :destination_device ORDER BY " + TIMESTAMP + " ASC, " + ID + " ASC LIMIT " + RESULT_SET_CHUNK_SIZE)
                      .bind("destination", destination)
                      .bind("destination_device", destinationDevice)
                      .mapTo(OutgoingMessageEntity.class)
@@ -114,6 +119,25 @@ public class Messages {
     }));
   }
 
+  /**
+   * Loads the next page of messages that sort after the given message. Callers draining a large queue should pass the
+   * last message of the previous page rather than loading from the start of the queue each time, which would make the
+   * database step over every row already delivered (and possibly not yet vacuumed) on every page.
+   */
+  public List<OutgoingMessageEntity> load(String destination, long destinationDevice, long afterTimestamp, long afterId) {
+    return database.with(jdbi-> jdbi.withHandle(handle -> {
+      try (Timer.Context ignored = loadAfterTimer.time()) {
+        return handle.createQuery("SELECT " + LOAD_COLUMNS + " FROM messages WHERE " + DESTINATION + " = :destination AND " + DESTINATION_DEVICE + " = :destination_device AND (" + TIMESTAMP + ", " + ID + ") > (:timestamp, :id) ORDER BY " + TIMESTAMP + " ASC, " + ID + " ASC LIMIT " + RESULT_SET_CHUNK_SIZE)
+                     .bind("destination", destination)
+                     .bind("destination_device", destinationDevice)
+                     .bind("timestamp", afterTimestamp)
+                     .bind("id", afterId)
+                     .mapTo(OutgoingMessageEntity.class)
+                     .list();
+      }
+    }));
+  }
+
   public Optional<OutgoingMessageEntity> remove(String destination, long destinationDevice, String source, long timestamp) {
     return database.with(jdbi -> jdbi.withHandle(handle -> {
       try (Timer.Context ignored = removeBySourceTimer.time()) {
@@ -140,6 +164,29 @@ public class Messages {
     }));
   }
 
+  public void remove(String destination, List<UUID> guids) {
+    database.use(jdbi -> jdbi.useHandle(handle -> {
+      try (Timer.Context ignored = removeByGuidsTimer.time()) {
+        handle.createUpdate("DELETE FROM messages WHERE " + DESTINATION + " = :destination AND " + GUID + " = ANY(:guids)")
+              .bind("destination", destination)
+              .bindArray("guids", UUID.class, guids)
+              .execute();
+      }
+    }));
+  }
+
+  public List<OutgoingMessageEntity> removeAndGet(String destination, List<UUID> guids) {
+    return database.with(jdbi -> jdbi.withHandle(handle -> {
+      try (Timer.Context ignored = removeByGuidsTimer.time()) {
+        return handle.createQuery("DELETE FROM messages WHERE " + DESTINATION + " = :destination AND " + GUID + " = ANY(:guids) RETURNING *")
+                     .bind("destination", destination)
+                     .bindArray("guids", UUID.class, guids)
+                     .mapTo(OutgoingMessageEntity.class)
+                     .list();
+      }
+    }));
+  }
+
   public void remove(String destination, long id) {
     database.use(jdbi -> jdbi.useHandle(handle -> {
       try (Timer.Context ignored = removeByIdTimer.time()) {
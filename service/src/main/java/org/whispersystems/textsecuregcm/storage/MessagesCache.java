@@ -25,6 +25,7 @@ import org.whispersystems.textsecuregcm.entities.OutgoingMessageEntity;
 import org.whispersystems.textsecuregcm.redis.ClusterLuaScript;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.RedisKeyBuilder;
 import org.whispersystems.textsecuregcm.util.RedisClusterUtil;
 
 import java.io.IOException;
@@ -41,6 +42,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
@@ -54,6 +56,8 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     private final ExecutorService notificationExecutorService;
 
     private final ClusterLuaScript insertScript;
+    private final ClusterLuaScript insertEphemeralScript;
+    private final ClusterLuaScript takeEphemeralScript;
     private final ClusterLuaScript removeByIdScript;
     private final ClusterLuaScript removeBySenderScript;
     private final ClusterLuaScript removeByGuidScript;
@@ -69,6 +73,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     private final Timer   getMessagesTimer                    = Metrics.timer(name(MessagesCache.class, "get"));
     private final Timer   getQueuesToPersistTimer             = Metrics.timer(name(MessagesCache.class, "getQueuesToPersist"));
     private final Timer   clearQueueTimer                     = Metrics.timer(name(MessagesCache.class, "clear"));
+    private final Timer   clearAccountTimer                   = Metrics.timer(name(MessagesCache.class, "clearAccount"));
     private final Timer   takeEphemeralMessageTimer           = Metrics.timer(name(MessagesCache.class, "takeEphemeral"));
     private final Counter pubSubMessageCounter                = Metrics.counter(name(MessagesCache.class, "pubSubMessage"));
     private final Counter newMessageNotificationCounter       = Metrics.counter(name(MessagesCache.class, "newMessageNotification"), "ephemeral", "false");
@@ -78,11 +83,29 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     static final         String NEXT_SLOT_TO_PERSIST_KEY  = "user_queue_persist_slot";
     private static final byte[] LOCK_VALUE                = "1".getBytes(StandardCharsets.UTF_8);
 
+    private static final byte[] MESSAGE_QUEUE_KEY_PREFIX           = RedisKeyBuilder.prefix("user_queue");
+    private static final byte[] EPHEMERAL_MESSAGE_QUEUE_KEY_PREFIX = RedisKeyBuilder.prefix("user_queue_ephemeral");
+    private static final byte[] MESSAGE_QUEUE_METADATA_KEY_PREFIX  = RedisKeyBuilder.prefix("user_queue_metadata");
+    private static final byte[] QUEUE_INDEX_KEY_PREFIX             = RedisKeyBuilder.prefix("user_queue_index");
+    private static final byte[] PERSIST_IN_PROGRESS_KEY_PREFIX     = RedisKeyBuilder.prefix("user_queue_persisting");
+
+    private static final byte[][] QUEUE_INDEX_KEYS_BY_SLOT = new byte[SlotHash.SLOT_COUNT][];
+
+    static {
+        // Filled in here, rather than on demand, so every thread sees the finished keys without further synchronization
+        for (int slot = 0; slot < QUEUE_INDEX_KEYS_BY_SLOT.length; slot++) {
+            QUEUE_INDEX_KEYS_BY_SLOT[slot] = RedisKeyBuilder.forHashTag(RedisClusterUtil.getMinimalHashTag(slot)).build(QUEUE_INDEX_KEY_PREFIX);
+        }
+    }
+
     private static final String QUEUE_KEYSPACE_PREFIX           = "__keyspace@0__:user_queue::";
     private static final String EPHEMERAL_QUEUE_KEYSPACE_PREFIX = "__keyspace@0__:user_queue_ephemeral::";
     private static final String PERSISTING_KEYSPACE_PREFIX      = "__keyspace@0__:user_queue_persisting::";
 
     private static final Duration MAX_EPHEMERAL_MESSAGE_DELAY = Duration.ofSeconds(10);
+    private static final byte[]   EPHEMERAL_QUEUE_TTL_SECONDS = String.valueOf(MAX_EPHEMERAL_MESSAGE_DELAY.toSeconds()).getBytes(StandardCharsets.UTF_8);
+
+    private static final int MAX_DEVICE_ID = 255;
 
     private static final String REMOVE_TIMER_NAME = name(MessagesCache.class, "remove");
 
@@ -101,6 +124,8 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         this.notificationExecutorService = notificationExecutorService;
 
         this.insertScript             = ClusterLuaScript.fromResource(redisCluster, "lua/insert_item.lua",           ScriptOutputType.INTEGER);
+        this.insertEphemeralScript    = ClusterLuaScript.fromResource(redisCluster, "lua/insert_ephemeral_item.lua", ScriptOutputType.STATUS);
+        this.takeEphemeralScript      = ClusterLuaScript.fromResource(redisCluster, "lua/take_ephemeral_items.lua",  ScriptOutputType.MULTI);
         this.removeByIdScript         = ClusterLuaScript.fromResource(redisCluster, "lua/remove_item_by_id.lua",     ScriptOutputType.VALUE);
         this.removeBySenderScript     = ClusterLuaScript.fromResource(redisCluster, "lua/remove_item_by_sender.lua", ScriptOutputType.VALUE);
         this.removeByGuidScript       = ClusterLuaScript.fromResource(redisCluster, "lua/remove_item_by_guid.lua",   ScriptOutputType.MULTI);
@@ -141,9 +166,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         final String                 sender          = message.hasSource() ? (message.getSource() + "::" + message.getTimestamp()) : "nil";
 
         return (long)insertTimer.record(() ->
-                insertScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                                                   getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                                                   getQueueIndexKey(destinationUuid, destinationDevice)),
+                insertScript.executeBinary(getQueueKeys(destinationUuid, destinationDevice),
                                            List.of(messageWithGuid.toByteArray(),
                                                    String.valueOf(message.getTimestamp()).getBytes(StandardCharsets.UTF_8),
                                                    sender.getBytes(StandardCharsets.UTF_8),
@@ -151,22 +174,15 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     }
 
     public void insertEphemeral(final UUID destinationUuid, final long destinationDevice, final MessageProtos.Envelope message) {
-        insertEphemeralTimer.record(() -> {
-                final byte[] ephemeralQueueKey = getEphemeralMessageQueueKey(destinationUuid, destinationDevice);
-
-                redisCluster.useBinaryCluster(connection -> {
-                    connection.sync().rpush(ephemeralQueueKey, message.toByteArray());
-                    connection.sync().expire(ephemeralQueueKey, MAX_EPHEMERAL_MESSAGE_DELAY.toSeconds());
-                });
-        });
+        insertEphemeralTimer.record(() ->
+                insertEphemeralScript.executeBinary(List.of(getEphemeralMessageQueueKey(destinationUuid, destinationDevice)),
+                                                    List.of(message.toByteArray(), EPHEMERAL_QUEUE_TTL_SECONDS)));
     }
 
     public Optional<OutgoingMessageEntity> remove(final UUID destinationUuid, final long destinationDevice, final long id) {
         try {
             final byte[] serialized = (byte[])Metrics.timer(REMOVE_TIMER_NAME, REMOVE_METHOD_TAG, REMOVE_METHOD_ID).record(() ->
-                    removeByIdScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                                                           getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                                                           getQueueIndexKey(destinationUuid, destinationDevice)),
+                    removeByIdScript.executeBinary(getQueueKeys(destinationUuid, destinationDevice),
                                                    List.of(String.valueOf(id).getBytes(StandardCharsets.UTF_8))));
 
             if (serialized != null) {
@@ -182,9 +198,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     public Optional<OutgoingMessageEntity> remove(final UUID destinationUuid, final long destinationDevice, final String sender, final long timestamp) {
         try {
             final byte[] serialized = (byte[])Metrics.timer(REMOVE_TIMER_NAME, REMOVE_METHOD_TAG, REMOVE_METHOD_SENDER).record(() ->
-                    removeBySenderScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                                                               getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                                                               getQueueIndexKey(destinationUuid, destinationDevice)),
+                    removeBySenderScript.executeBinary(getQueueKeys(destinationUuid, destinationDevice),
                                                        List.of((sender + "::" + timestamp).getBytes(StandardCharsets.UTF_8))));
 
             if (serialized != null) {
@@ -204,9 +218,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     @SuppressWarnings("unchecked")
     public List<OutgoingMessageEntity> remove(final UUID destinationUuid, final long destinationDevice, final List<UUID> messageGuids) {
         final List<byte[]> serialized = (List<byte[]>)Metrics.timer(REMOVE_TIMER_NAME, REMOVE_METHOD_TAG, REMOVE_METHOD_UUID).record(() ->
-                removeByGuidScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                                                         getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                                                         getQueueIndexKey(destinationUuid, destinationDevice)),
+                removeByGuidScript.executeBinary(getQueueKeys(destinationUuid, destinationDevice),
                                                  messageGuids.stream().map(guid -> guid.toString().getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList())));
 
         final List<OutgoingMessageEntity> removedMessages = new ArrayList<>(serialized.size());
@@ -229,8 +241,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     @SuppressWarnings("unchecked")
     public List<OutgoingMessageEntity> get(final UUID destinationUuid, final long destinationDevice, final int limit) {
         return getMessagesTimer.record(() -> {
-            final List<byte[]> queueItems = (List<byte[]>)getItemsScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                                                                                               getPersistInProgressKey(destinationUuid, destinationDevice)),
+            final List<byte[]> queueItems = (List<byte[]>)getItemsScript.executeBinary(getQueueAndPersistInProgressKeys(destinationUuid, destinationDevice),
                                                                                        List.of(String.valueOf(limit).getBytes(StandardCharsets.UTF_8)));
 
             final List<OutgoingMessageEntity> messageEntities;
@@ -275,47 +286,59 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         });
     }
 
-    public Optional<MessageProtos.Envelope> takeEphemeralMessage(final UUID destinationUuid, final long destinationDevice) {
-        return takeEphemeralMessage(destinationUuid, destinationDevice, System.currentTimeMillis());
+    public List<MessageProtos.Envelope> takeEphemeralMessages(final UUID destinationUuid, final long destinationDevice, final int limit) {
+        return takeEphemeralMessages(destinationUuid, destinationDevice, limit, System.currentTimeMillis());
     }
 
+    @SuppressWarnings("unchecked")
     @VisibleForTesting
-    Optional<MessageProtos.Envelope> takeEphemeralMessage(final UUID destinationUuid, final long destinationDevice, final long currentTimeMillis) {
+    List<MessageProtos.Envelope> takeEphemeralMessages(final UUID destinationUuid, final long destinationDevice, final int limit, final long currentTimeMillis) {
         final long earliestAllowableTimestamp = currentTimeMillis - MAX_EPHEMERAL_MESSAGE_DELAY.toMillis();
 
-        return takeEphemeralMessageTimer.record(() -> redisCluster.withBinaryCluster(connection -> {
-            byte[] messageBytes;
+        return takeEphemeralMessageTimer.record(() -> {
+            final List<byte[]> serializedMessages = (List<byte[]>)takeEphemeralScript.executeBinary(List.of(getEphemeralMessageQueueKey(destinationUuid, destinationDevice)),
+                                                                                                    List.of(String.valueOf(limit).getBytes(StandardCharsets.UTF_8)));
 
-            while ((messageBytes = connection.sync().lpop(getEphemeralMessageQueueKey(destinationUuid, destinationDevice))) != null) {
+            final List<MessageProtos.Envelope> messages = new ArrayList<>(serializedMessages.size());
+
+            for (final byte[] messageBytes : serializedMessages) {
                 try {
                     final MessageProtos.Envelope message = MessageProtos.Envelope.parseFrom(messageBytes);
 
                     if (message.getTimestamp() >= earliestAllowableTimestamp) {
-                        return Optional.of(message);
+                        messages.add(message);
                     }
                 } catch (final InvalidProtocolBufferException e) {
                     logger.warn("Failed to parse envelope", e);
                 }
             }
 
-            return Optional.empty();
-        }));
+            return messages;
+        });
     }
 
     public void clear(final UUID destinationUuid) {
         // TODO Remove null check in a fully UUID-based world
         if (destinationUuid != null) {
-            for (int i = 1; i < 256; i++) {
-                clear(destinationUuid, i);
-            }
+            // Queues may linger for devices that no longer exist, so we clear every possible device ID. Each queue lives
+            // in its own slot, so we can't clear them all with a single script call, but we can dispatch all of the calls
+            // at once and let them pipeline rather than waiting for each one in turn.
+            clearAccountTimer.record(() -> {
+                final CompletableFuture<?>[] clearFutures = new CompletableFuture[MAX_DEVICE_ID];
+
+                for (int deviceId = 1; deviceId <= MAX_DEVICE_ID; deviceId++) {
+                    clearFutures[deviceId - 1] = removeQueueScript.executeBinaryAsync(getQueueKeys(destinationUuid, deviceId),
+                                                                                      Collections.emptyList());
+                }
+
+                CompletableFuture.allOf(clearFutures).join();
+            });
         }
     }
 
     public void clear(final UUID destinationUuid, final long deviceId) {
         clearQueueTimer.record(() ->
-                removeQueueScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, deviceId),
-                                                        getMessageQueueMetadataKey(destinationUuid, deviceId),
-                                                        getQueueIndexKey(destinationUuid, deviceId)),
+                removeQueueScript.executeBinary(getQueueKeys(destinationUuid, deviceId),
                                                 Collections.emptyList()));
     }
 
@@ -331,7 +354,9 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     }
 
     void addQueueToPersist(final UUID accountUuid, final long deviceId) {
-        redisCluster.useBinaryCluster(connection -> connection.sync().zadd(getQueueIndexKey(accountUuid, deviceId), ZAddArgs.Builder.nx(), System.currentTimeMillis(), getMessageQueueKey(accountUuid, deviceId)));
+        final RedisKeyBuilder keyBuilder = RedisKeyBuilder.forDevice(accountUuid, deviceId);
+
+        redisCluster.useBinaryCluster(connection -> connection.sync().zadd(getQueueIndexKey(keyBuilder.getSlot()), ZAddArgs.Builder.nx(), System.currentTimeMillis(), keyBuilder.build(MESSAGE_QUEUE_KEY_PREFIX)));
     }
 
     void lockQueueForPersistence(final UUID accountUuid, final long deviceId) {
@@ -365,6 +390,12 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         }
     }
 
+    public Optional<MessageAvailabilityListener> getLocalMessageAvailabilityListener(final UUID destinationUuid, final long deviceId) {
+        synchronized (messageListenersByQueueName) {
+            return Optional.ofNullable(messageListenersByQueueName.get(getQueueName(destinationUuid, deviceId)));
+        }
+    }
+
     private void subscribeForKeyspaceNotifications(final String queueName) {
         final int slot = SlotHash.getSlot(queueName);
 
@@ -439,29 +470,39 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         return channel.substring(startOfHashTag + 1, endOfHashTag);
     }
 
-    @VisibleForTesting
-    static byte[] getMessageQueueKey(final UUID accountUuid, final long deviceId) {
-        return ("user_queue::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
+    /**
+     * Returns the keys for a device's message queue, its metadata, and the index of queues in its slot, in the order
+     * the queue scripts expect them.
+     */
+    private static List<byte[]> getQueueKeys(final UUID accountUuid, final long deviceId) {
+        final RedisKeyBuilder keyBuilder = RedisKeyBuilder.forDevice(accountUuid, deviceId);
+
+        return List.of(keyBuilder.build(MESSAGE_QUEUE_KEY_PREFIX),
+                       keyBuilder.build(MESSAGE_QUEUE_METADATA_KEY_PREFIX),
+                       getQueueIndexKey(keyBuilder.getSlot()));
     }
 
-    static byte[] getEphemeralMessageQueueKey(final UUID accountUuid, final long deviceId) {
-        return ("user_queue_ephemeral::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
+    private static List<byte[]> getQueueAndPersistInProgressKeys(final UUID accountUuid, final long deviceId) {
+        final RedisKeyBuilder keyBuilder = RedisKeyBuilder.forDevice(accountUuid, deviceId);
+
+        return List.of(keyBuilder.build(MESSAGE_QUEUE_KEY_PREFIX), keyBuilder.build(PERSIST_IN_PROGRESS_KEY_PREFIX));
     }
 
-    private static byte[] getMessageQueueMetadataKey(final UUID accountUuid, final long deviceId) {
-        return ("user_queue_metadata::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
+    @VisibleForTesting
+    static byte[] getMessageQueueKey(final UUID accountUuid, final long deviceId) {
+        return RedisKeyBuilder.forDevice(accountUuid, deviceId).build(MESSAGE_QUEUE_KEY_PREFIX);
     }
 
-    private static byte[] getQueueIndexKey(final UUID accountUuid, final long deviceId) {
-        return getQueueIndexKey(SlotHash.getSlot(accountUuid.toString() + "::" + deviceId));
+    static byte[] getEphemeralMessageQueueKey(final UUID accountUuid, final long deviceId) {
+        return RedisKeyBuilder.forDevice(accountUuid, deviceId).build(EPHEMERAL_MESSAGE_QUEUE_KEY_PREFIX);
     }
 
     private static byte[] getQueueIndexKey(final int slot) {
-        return ("user_queue_index::{" + RedisClusterUtil.getMinimalHashTag(slot) + "}").getBytes(StandardCharsets.UTF_8);
+        return QUEUE_INDEX_KEYS_BY_SLOT[slot];
     }
 
     private static byte[] getPersistInProgressKey(final UUID accountUuid, final long deviceId) {
-        return ("user_queue_persisting::{" + accountUuid + "::" + deviceId  + "}").getBytes(StandardCharsets.UTF_8);
+        return RedisKeyBuilder.forDevice(accountUuid, deviceId).build(PERSIST_IN_PROGRESS_KEY_PREFIX);
     }
 
     static UUID getAccountUuidFromQueueName(final String queueName) {
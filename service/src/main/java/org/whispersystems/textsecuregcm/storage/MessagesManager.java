@@ -17,8 +17,10 @@ import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.util.Constants;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -52,8 +54,8 @@ public class MessagesManager {
     messagesCache.insertEphemeral(destinationUuid, destinationDevice, message);
   }
 
-  public Optional<Envelope> takeEphemeralMessage(final UUID destinationUuid, final long destinationDevice) {
-    return messagesCache.takeEphemeralMessage(destinationUuid, destinationDevice);
+  public List<Envelope> takeEphemeralMessages(final UUID destinationUuid, final long destinationDevice, final int limit) {
+    return messagesCache.takeEphemeralMessages(destinationUuid, destinationDevice, limit);
   }
 
   public boolean hasCachedMessages(final UUID destinationUuid, final long destinationDevice) {
@@ -61,9 +63,27 @@ public class MessagesManager {
   }
 
   public OutgoingMessageEntityList getMessagesForDevice(String destination, UUID destinationUuid, long destinationDevice, final String userAgent, final boolean cachedMessagesOnly) {
+    return getMessagesForDevice(destination, destinationUuid, destinationDevice, userAgent, cachedMessagesOnly, Optional.empty());
+  }
+
+  /**
+   * Returns the next page of messages for the given device. Callers that page through a queue should pass the last
+   * persisted (i.e. non-cached) message they've received so persisted messages can be loaded from where the previous
+   * page left off.
+   */
+  @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+  public OutgoingMessageEntityList getMessagesForDevice(String destination, UUID destinationUuid, long destinationDevice, final String userAgent, final boolean cachedMessagesOnly, final Optional<OutgoingMessageEntity> lastPersistedMessage) {
     RedisOperation.unchecked(() -> pushLatencyManager.recordQueueRead(destinationUuid, destinationDevice, userAgent));
 
-    List<OutgoingMessageEntity> messages = cachedMessagesOnly ? new ArrayList<>() : this.messages.load(destination, destinationDevice);
+    final List<OutgoingMessageEntity> messages;
+
+    if (cachedMessagesOnly) {
+      messages = new ArrayList<>();
+    } else if (lastPersistedMessage.isPresent()) {
+      messages = this.messages.load(destination, destinationDevice, lastPersistedMessage.get().getTimestamp(), lastPersistedMessage.get().getId());
+    } else {
+      messages = this.messages.load(destination, destinationDevice);
+    }
 
     if (messages.size() < Messages.RESULT_SET_CHUNK_SIZE) {
       messages.addAll(messagesCache.get(destinationUuid, destinationDevice, Messages.RESULT_SET_CHUNK_SIZE - messages.size()));
@@ -127,6 +147,62 @@ public class MessagesManager {
     }
   }
 
+  /**
+   * Removes a batch of acknowledged messages for a single device. Cached messages are removed from the message cache in
+   * a single script call and persisted messages are removed from the database in a single statement.
+   */
+  public void delete(String destination, UUID destinationUuid, long deviceId, List<OutgoingMessageEntity> acknowledgedMessages) {
+    final List<UUID> cachedMessageGuids    = new ArrayList<>();
+    final List<UUID> persistedMessageGuids = new ArrayList<>();
+
+    for (final OutgoingMessageEntity message : acknowledgedMessages) {
+      if (message.getGuid() == null) {
+        // Messages stored before we assigned server GUIDs can only be removed by ID
+        delete(destination, destinationUuid, deviceId, message.getId(), message.isCached());
+      } else if (message.isCached()) {
+        cachedMessageGuids.add(message.getGuid());
+      } else {
+        persistedMessageGuids.add(message.getGuid());
+      }
+    }
+
+    if (!cachedMessageGuids.isEmpty()) {
+      messagesCache.remove(destinationUuid, deviceId, cachedMessageGuids);
+      cacheHitByGuidMeter.mark(cachedMessageGuids.size());
+    }
+
+    if (!persistedMessageGuids.isEmpty()) {
+      this.messages.remove(destination, persistedMessageGuids);
+      cacheMissByGuidMeter.mark(persistedMessageGuids.size());
+    }
+  }
+
+  /**
+   * Removes a batch of acknowledged messages by GUID, wherever they're stored, and returns the messages that were
+   * actually removed.
+   */
+  public List<OutgoingMessageEntity> deleteByGuids(String destination, UUID destinationUuid, long deviceId, List<UUID> guids) {
+    final List<OutgoingMessageEntity> removedMessages = new ArrayList<>(messagesCache.remove(destinationUuid, deviceId, guids));
+    cacheHitByGuidMeter.mark(removedMessages.size());
+
+    if (removedMessages.size() < guids.size()) {
+      final Set<UUID> remainingGuids = new HashSet<>(guids);
+
+      for (final OutgoingMessageEntity removedMessage : removedMessages) {
+        remainingGuids.remove(removedMessage.getGuid());
+      }
+
+      if (!remainingGuids.isEmpty()) {
+        final List<OutgoingMessageEntity> removedPersistedMessages = this.messages.removeAndGet(destination, new ArrayList<>(remainingGuids));
+        cacheMissByGuidMeter.mark(removedPersistedMessages.size());
+
+        removedMessages.addAll(removedPersistedMessages);
+      }
+    }
+
+    return removedMessages;
+  }
+
   public void persistMessages(final String destination, final UUID destinationUuid, final long destinationDeviceId, final List<Envelope> messages) {
     this.messages.store(messages, destination, destinationDeviceId);
     messagesCache.remove(destinationUuid, destinationDeviceId, messages.stream().map(message -> UUID.fromString(message.getServerGuid())).collect(Collectors.toList()));
@@ -136,6 +212,10 @@ public class MessagesManager {
     messagesCache.addMessageAvailabilityListener(destinationUuid, deviceId, listener);
   }
 
+  public Optional<MessageAvailabilityListener> getLocalMessageAvailabilityListener(final UUID destinationUuid, final long deviceId) {
+    return messagesCache.getLocalMessageAvailabilityListener(destinationUuid, deviceId);
+  }
+
   public void removeMessageAvailabilityListener(final MessageAvailabilityListener listener) {
     messagesCache.removeMessageAvailabilityListener(listener);
   }
@@ -4,23 +4,43 @@
  */
 package org.whispersystems.textsecuregcm.storage;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.SetArgs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.StoredVerificationCode;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 
 import java.io.IOException;
 import java.util.Optional;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class PendingAccountsManager {
 
   private final Logger logger = LoggerFactory.getLogger(PendingAccountsManager.class);
 
+  private static final MetricRegistry metricRegistry   = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private static final Meter          cacheHitMeter    = metricRegistry.meter(name(PendingAccountsManager.class, "cacheHit"   ));
+  private static final Meter          cacheMissMeter   = metricRegistry.meter(name(PendingAccountsManager.class, "cacheMiss"  ));
+  private static final Meter          negativeHitMeter = metricRegistry.meter(name(PendingAccountsManager.class, "negativeHit"));
+
   private static final String CACHE_PREFIX = "pending_account2::";
 
+  /**
+   * Cached for numbers with no pending verification code so repeated lookups don't fall through to the database. It's
+   * written with NX so it never replaces a code stored concurrently, and expires quickly to bound any staleness.
+   */
+  private static final String ABSENT_MARKER      = "-";
+  private static final long   ABSENT_TTL_SECONDS = 30;
+
+  private static final char SEPARATOR = ':';
+
   private final PendingAccounts           pendingAccounts;
   private final FaultTolerantRedisCluster cacheCluster;
   private final ObjectMapper              mapper;
@@ -43,39 +63,83 @@ public class PendingAccountsManager {
   }
 
   public Optional<StoredVerificationCode> getCodeForNumber(String number) {
-    Optional<StoredVerificationCode> code = memcacheGet(number);
+    final String cached = cacheCluster.withCluster(connection -> connection.sync().get(CACHE_PREFIX + number));
+
+    if (ABSENT_MARKER.equals(cached)) {
+      negativeHitMeter.mark();
+      return Optional.empty();
+    }
+
+    Optional<StoredVerificationCode> code = cached != null ? decode(cached) : Optional.empty();
+
+    if (code.isPresent()) {
+      cacheHitMeter.mark();
+    } else {
+      cacheMissMeter.mark();
 
-    if (!code.isPresent()) {
       code = pendingAccounts.getCodeForNumber(number);
-      code.ifPresent(storedVerificationCode -> memcacheSet(number, storedVerificationCode));
+
+      if (code.isPresent()) memcacheSet(number, code.get());
+      else                  memcacheSetAbsent(number);
     }
 
     return code;
   }
 
-  private void memcacheSet(String number, StoredVerificationCode code) {
-    try {
-      final String verificationCodeJson = mapper.writeValueAsString(code);
+  private static String encode(StoredVerificationCode code) {
+    return String.valueOf(code.getTimestamp()) + SEPARATOR + nullToEmpty(code.getCode()) + SEPARATOR + nullToEmpty(code.getPushCode());
+  }
 
-      cacheCluster.useCluster(connection -> connection.sync().set(CACHE_PREFIX + number, verificationCodeJson));
-    } catch (JsonProcessingException e) {
-      throw new IllegalArgumentException(e);
+  private Optional<StoredVerificationCode> decode(String value) {
+    // Entries written before the compact encoding are JSON; they're still honored until they're replaced.
+    if (value.startsWith("{")) {
+      try {
+        return Optional.of(mapper.readValue(value, StoredVerificationCode.class));
+      } catch (IOException e) {
+        logger.warn("Error deserializing value...", e);
+        return Optional.empty();
+      }
+    }
+
+    final int firstSeparator  = value.indexOf(SEPARATOR);
+    final int secondSeparator = firstSeparator < 0 ? -1 : value.indexOf(SEPARATOR, firstSeparator + 1);
+
+    if (secondSeparator < 0) {
+      logger.warn("Malformed cached verification code");
+      return Optional.empty();
     }
-  }
 
-  private Optional<StoredVerificationCode> memcacheGet(String number) {
     try {
-      final String json = cacheCluster.withCluster(connection -> connection.sync().get(CACHE_PREFIX + number));
+      final long   timestamp = Long.parseLong(value.substring(0, firstSeparator));
+      final String code      = emptyToNull(value.substring(firstSeparator + 1, secondSeparator));
+      final String pushCode  = emptyToNull(value.substring(secondSeparator + 1));
 
-      if (json == null) return Optional.empty();
-      else              return Optional.of(mapper.readValue(json, StoredVerificationCode.class));
-    } catch (IOException e) {
-      logger.warn("Error deserializing value...", e);
+      return Optional.of(new StoredVerificationCode(code, timestamp, pushCode));
+    } catch (NumberFormatException e) {
+      logger.warn("Malformed cached verification code", e);
       return Optional.empty();
     }
   }
 
+  private void memcacheSet(String number, StoredVerificationCode code) {
+    final String encoded = encode(code);
+
+    cacheCluster.useCluster(connection -> connection.sync().set(CACHE_PREFIX + number, encoded));
+  }
+
+  private void memcacheSetAbsent(String number) {
+    cacheCluster.useCluster(connection -> connection.sync().set(CACHE_PREFIX + number, ABSENT_MARKER, SetArgs.Builder.nx().ex(ABSENT_TTL_SECONDS)));
+  }
+
   private void memcacheDelete(String number) {
     cacheCluster.useCluster(connection -> connection.sync().del(CACHE_PREFIX + number));
   }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
 }
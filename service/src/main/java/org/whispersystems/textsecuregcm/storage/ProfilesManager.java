@@ -5,37 +5,63 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.lettuce.core.RedisException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class ProfilesManager {
 
   private final Logger logger = LoggerFactory.getLogger(PendingAccountsManager.class);
 
+  private static final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private static final Meter          localHitMeter  = metricRegistry.meter(name(ProfilesManager.class, "localHit"));
+
   private static final String CACHE_PREFIX = "profiles::";
 
+  private static final long     LOCAL_CACHE_SIZE = 100_000;
+  private static final Duration LOCAL_CACHE_TTL  = Duration.ofSeconds(30);
+
   private final Profiles                  profiles;
   private final FaultTolerantRedisCluster cacheCluster;
   private final ObjectMapper              mapper;
 
+  // Profile versions are rarely rewritten once set, so a short-lived local copy absorbs bursts of fetches for the same
+  // (uuid, version) without risking much staleness. Absent versions aren't cached, since they may be set at any time.
+  // Deleted profiles simply age out; other instances can't be told about a deletion anyway.
+  private final Cache<Pair<UUID, String>, VersionedProfile> localProfiles;
+
   public ProfilesManager(Profiles profiles, FaultTolerantRedisCluster cacheCluster) {
     this.profiles               = profiles;
     this.cacheCluster           = cacheCluster;
     this.mapper                 = SystemMapper.getMapper();
+    this.localProfiles          = CacheBuilder.newBuilder().maximumSize(LOCAL_CACHE_SIZE).expireAfterWrite(LOCAL_CACHE_TTL).build();
   }
 
   public void set(UUID uuid, VersionedProfile versionedProfile) {
     memcacheSet(uuid, versionedProfile);
     profiles.set(uuid, versionedProfile);
+
+    // Invalidate only once both writes have landed; a concurrent read before then could otherwise put the old profile
+    // back in the local cache for a full TTL.
+    localProfiles.invalidate(new Pair<>(uuid, versionedProfile.getVersion()));
   }
 
   public void deleteAll(UUID uuid) {
@@ -44,6 +70,14 @@ public class ProfilesManager {
   }
 
   public Optional<VersionedProfile> get(UUID uuid, String version) {
+    final Pair<UUID, String> localKey     = new Pair<>(uuid, version);
+    final VersionedProfile   localProfile = localProfiles.getIfPresent(localKey);
+
+    if (localProfile != null) {
+      localHitMeter.mark();
+      return Optional.of(localProfile);
+    }
+
     Optional<VersionedProfile> profile = memcacheGet(uuid, version);
 
     if (!profile.isPresent()) {
@@ -51,6 +85,8 @@ public class ProfilesManager {
       profile.ifPresent(versionedProfile -> memcacheSet(uuid, versionedProfile));
     }
 
+    profile.ifPresent(versionedProfile -> localProfiles.put(localKey, versionedProfile));
+
     return profile;
   }
 
@@ -26,10 +26,11 @@ public class RemoteConfigs {
   public static final String VALUE         = "value";
   public static final String HASH_KEY      = "hash_key";
 
-  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
-  private final Timer          setTimer       = metricRegistry.timer(name(Accounts.class, "set"   ));
-  private final Timer          getAllTimer    = metricRegistry.timer(name(Accounts.class, "getAll"));
-  private final Timer          deleteTimer    = metricRegistry.timer(name(Accounts.class, "delete"));
+  private final MetricRegistry metricRegistry   = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          setTimer         = metricRegistry.timer(name(Accounts.class, "set"        ));
+  private final Timer          getAllTimer      = metricRegistry.timer(name(Accounts.class, "getAll"     ));
+  private final Timer          getChecksumTimer = metricRegistry.timer(name(RemoteConfigs.class, "getChecksum"));
+  private final Timer          deleteTimer      = metricRegistry.timer(name(Accounts.class, "delete"     ));
 
   private final FaultTolerantDatabase database;
 
@@ -64,6 +65,20 @@ public class RemoteConfigs {
     }));
   }
 
+  /**
+   * Returns a digest of the whole table that changes whenever any config is added, changed or removed, or
+   * {@code null} if there are no configs.
+   */
+  public String getChecksum() {
+    return database.with(jdbi -> jdbi.withHandle(handle -> {
+      try (Timer.Context ignored = getChecksumTimer.time()) {
+        return handle.createQuery("SELECT md5(string_agg(remote_config::text, ',' ORDER BY " + NAME + ")) FROM remote_config")
+                     .mapTo(String.class)
+                     .findOnly();
+      }
+    }));
+  }
+
   public void delete(String name) {
     database.use(jdbi -> jdbi.useHandle(handle -> {
       try (Timer.Context ignored = deleteTimer.time()) {
@@ -11,8 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.Util;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -23,7 +23,10 @@ public class RemoteConfigsManager implements Managed {
   private final RemoteConfigs remoteConfigs;
   private final long          sleepInterval;
 
-  private final AtomicReference<List<RemoteConfig>> cachedConfigs = new AtomicReference<>(new LinkedList<>());
+  private final AtomicReference<List<RemoteConfig>> cachedConfigs = new AtomicReference<>(List.of());
+
+  private String  cachedChecksum;
+  private boolean loaded;
 
   public RemoteConfigsManager(RemoteConfigs remoteConfigs) {
     this(remoteConfigs, TimeUnit.SECONDS.toMillis(10));
@@ -53,7 +56,14 @@ public class RemoteConfigsManager implements Managed {
   }
 
   private void refreshCache() {
-    this.cachedConfigs.set(remoteConfigs.getAll());
+    final String checksum = remoteConfigs.getChecksum();
+
+    // The full table is only reloaded when its checksum moves; callers always see an immutable snapshot
+    if (!loaded || !Objects.equals(checksum, cachedChecksum)) {
+      this.cachedConfigs.set(List.copyOf(remoteConfigs.getAll()));
+      this.cachedChecksum = checksum;
+      this.loaded         = true;
+    }
 
     synchronized (this.cachedConfigs) {
       this.cachedConfigs.notifyAll();
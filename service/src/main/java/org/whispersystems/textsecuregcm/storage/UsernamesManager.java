@@ -5,16 +5,21 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.lettuce.core.RedisException;
+import io.lettuce.core.SetArgs;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.util.Constants;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -32,16 +37,30 @@ public class UsernamesManager {
   private static final Timer          redisUuidGetTimer     = metricRegistry.timer(name(UsernamesManager.class, "redisUuidGet"    ));
   private static final Timer          redisUsernameGetTimer = metricRegistry.timer(name(UsernamesManager.class, "redisUsernameGet"));
 
+  private static final Meter          localHitMeter         = metricRegistry.meter(name(UsernamesManager.class, "localHit"        ));
+  private static final Meter          negativeHitMeter      = metricRegistry.meter(name(UsernamesManager.class, "negativeHit"     ));
+
+  private static final long     LOCAL_CACHE_SIZE   = 100_000;
+  private static final Duration LOCAL_CACHE_TTL    = Duration.ofSeconds(10);
+  private static final long     ABSENT_TTL_SECONDS = 30;
+
   private final Logger logger = LoggerFactory.getLogger(UsernamesManager.class);
 
   private final Usernames                 usernames;
   private final ReservedUsernames         reservedUsernames;
   private final FaultTolerantRedisCluster cacheCluster;
 
+  // Other instances can't invalidate these, so they're bounded and short-lived; they exist to absorb repeated
+  // lookups for the same username (e.g. during contact sync) and include absent results.
+  private final Cache<String, Optional<UUID>> localUuidsByUsername;
+  private final Cache<UUID, Optional<String>> localUsernamesByUuid;
+
   public UsernamesManager(Usernames usernames, ReservedUsernames reservedUsernames, FaultTolerantRedisCluster cacheCluster) {
     this.usernames              = usernames;
     this.reservedUsernames      = reservedUsernames;
     this.cacheCluster           = cacheCluster;
+    this.localUuidsByUsername   = CacheBuilder.newBuilder().maximumSize(LOCAL_CACHE_SIZE).expireAfterWrite(LOCAL_CACHE_TTL).build();
+    this.localUsernamesByUuid   = CacheBuilder.newBuilder().maximumSize(LOCAL_CACHE_SIZE).expireAfterWrite(LOCAL_CACHE_TTL).build();
   }
 
   public boolean put(UUID uuid, String username) {
@@ -51,6 +70,8 @@ public class UsernamesManager {
       }
 
       if (databasePut(uuid, username)) {
+        localInvalidate(uuid);
+        localUuidsByUsername.invalidate(username);
         redisSet(uuid, username, true);
 
         return true;
@@ -62,38 +83,68 @@ public class UsernamesManager {
 
   public Optional<UUID> get(String username) {
     try (Timer.Context ignored = getByUsernameTimer.time()) {
-      Optional<UUID> uuid = redisGet(username);
+      final Optional<UUID> local = localUuidsByUsername.getIfPresent(username);
 
-      if (uuid.isPresent()) {
-        return uuid;
+      if (local != null) {
+        localHitMeter.mark();
+        return local;
       }
 
-      Optional<UUID> retrieved = databaseGet(username);
-      retrieved.ifPresent(retrievedUuid -> redisSet(retrievedUuid, username, false));
+      Optional<UUID> uuid = redisGet(username);
 
-      return retrieved;
+      if (uuid.isEmpty()) {
+        if (redisIsAbsent(getUsernameMapKey(username))) {
+          negativeHitMeter.mark();
+        } else {
+          uuid = databaseGet(username);
+
+          if (uuid.isPresent()) redisSet(uuid.get(), username, false);
+          else                  redisSetAbsent(getUsernameMapKey(username));
+        }
+      }
+
+      localUuidsByUsername.put(username, uuid);
+      return uuid;
     }
   }
 
   public Optional<String> get(UUID uuid) {
     try (Timer.Context ignored = getByUuidTimer.time()) {
-      Optional<String> username = redisGet(uuid);
+      final Optional<String> local = localUsernamesByUuid.getIfPresent(uuid);
 
-      if (username.isPresent()) {
-        return username;
+      if (local != null) {
+        localHitMeter.mark();
+        return local;
       }
 
-      Optional<String> retrieved = databaseGet(uuid);
-      retrieved.ifPresent(retrievedUsername -> redisSet(uuid, retrievedUsername, false));
+      Optional<String> username = redisGet(uuid);
+
+      if (username.isEmpty()) {
+        if (redisIsAbsent(getUuidMapKey(uuid))) {
+          negativeHitMeter.mark();
+        } else {
+          username = databaseGet(uuid);
 
-      return retrieved;
+          if (username.isPresent()) redisSet(uuid, username.get(), false);
+          else                      redisSetAbsent(getUuidMapKey(uuid));
+        }
+      }
+
+      localUsernamesByUuid.put(uuid, username);
+      return username;
     }
   }
 
   public void delete(UUID uuid) {
     try (Timer.Context ignored = deleteTimer.time()) {
-      redisDelete(uuid);
+      // The username may not be in the local cache, so look it up to make sure it stops resolving locally
+      final Optional<String> maybeUsername = redisGet(uuid).or(() -> databaseGet(uuid));
+
+      redisDelete(uuid, maybeUsername);
       databaseDelete(uuid);
+
+      localInvalidate(uuid);
+      maybeUsername.ifPresent(localUuidsByUsername::invalidate);
     }
   }
 
@@ -126,6 +177,7 @@ public class UsernamesManager {
         maybeOldUsername.ifPresent(oldUsername -> commands.del(getUsernameMapKey(oldUsername)));
         commands.set(uuidMapKey, username);
         commands.set(usernameMapKey, uuid.toString());
+        commands.del(getAbsentKey(uuidMapKey), getAbsentKey(usernameMapKey));
       });
     } catch (RedisException e) {
       if (required) throw e;
@@ -156,20 +208,47 @@ public class UsernamesManager {
     }
   }
 
-  private void redisDelete(UUID uuid) {
+  private boolean redisIsAbsent(String mapKey) {
+    try {
+      return cacheCluster.withCluster(connection -> connection.sync().get(getAbsentKey(mapKey))) != null;
+    } catch (RedisException e) {
+      logger.warn("Redis get failure", e);
+      return false;
+    }
+  }
+
+  private void redisSetAbsent(String mapKey) {
+    try {
+      cacheCluster.useCluster(connection -> connection.sync().set(getAbsentKey(mapKey), "", SetArgs.Builder.ex(ABSENT_TTL_SECONDS)));
+    } catch (RedisException e) {
+      logger.warn("Ignoring Redis failure", e);
+    }
+  }
+
+  private void redisDelete(UUID uuid, Optional<String> maybeUsername) {
     try (Timer.Context ignored = redisUuidGetTimer.time()) {
       cacheCluster.useCluster(connection -> {
         final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
 
-        commands.del(getUuidMapKey(uuid));
-
-        redisGet(uuid).ifPresent(username -> {
+        maybeUsername.ifPresent(username -> {
           commands.del(getUsernameMapKey(username));
         });
+
+        commands.del(getUuidMapKey(uuid));
       });
     }
   }
 
+  private void localInvalidate(UUID uuid) {
+    final Optional<String> maybeUsername = localUsernamesByUuid.getIfPresent(uuid);
+
+    if (maybeUsername != null) {
+      maybeUsername.ifPresent(localUuidsByUsername::invalidate);
+    }
+
+    localUsernamesByUuid.invalidate(uuid);
+  }
+
   private String getUuidMapKey(UUID uuid) {
     return "UsernameByUuid::" + uuid.toString();
   }
@@ -178,4 +257,8 @@ public class UsernamesManager {
     return "UsernameByUsername::" + username;
   }
 
+  private String getAbsentKey(String mapKey) {
+    return "Absent::" + mapKey;
+  }
+
 }
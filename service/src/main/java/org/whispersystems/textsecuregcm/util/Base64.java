@@ -1232,10 +1232,93 @@ public class Base64
         System.arraycopy( outBuff, 0, out, 0, outBuffPosn ); 
         return out;
     }   // end decode
-    
-    
-	
-	
+
+
+    /**
+     * Decodes Base64 characters directly from a character array (like
+     * a JSON parser's text buffer) without first copying them into a
+     * String or byte array. Behaves like {@link #decode(byte[], int, int, int)}
+     * with no options, but sizes the output array exactly when the input
+     * contains no white space.
+     *
+     * @param source The Base64 encoded characters
+     * @param off    The offset of where to begin decoding
+     * @param len    The number of characters to decode
+     * @return decoded data
+     * @throws java.io.IOException If bogus characters exist in source data
+     */
+    public static byte[] decode( char[] source, int off, int len )
+    throws java.io.IOException {
+
+        if( source == null ){
+            throw new NullPointerException( "Cannot decode null source array." );
+        }   // end if
+        if( off < 0 || off + len > source.length ){
+            throw new IllegalArgumentException( String.format(
+            "Source array with length %d cannot have offset of %d and process %d characters.", source.length, off, len ) );
+        }   // end if
+
+        if( len == 0 ){
+            return new byte[0];
+        }else if( len < 4 ){
+            throw new IllegalArgumentException(
+            "Base64-encoded string must have at least four characters, but length specified was " + len );
+        }   // end if
+
+        byte[] DECODABET = getDecodabet( NO_OPTIONS );
+
+        int padding = 0;                    // Trailing padding characters don't produce output
+        while( padding < 2 && source[ off + len - 1 - padding ] == EQUALS_SIGN ){
+            padding++;
+        }   // end while
+
+        byte[] outBuff     = new byte[ (len / 4) * 3 - padding ];
+        int    outBuffPosn = 0;
+
+        byte[] b4     = new byte[4];
+        int    b4Posn = 0;
+
+        for( int i = off; i < off + len; i++ ) {
+            char c = source[i];
+
+            if( c > 0x7f || DECODABET[ c ] < WHITE_SPACE_ENC ) {
+                throw new java.io.IOException( String.format(
+                "Bad Base64 input character '%c' in array position %d", c, i ) );
+            }   // end if: bad character
+
+            if( DECODABET[ c ] >= EQUALS_SIGN_ENC ) {
+                b4[ b4Posn++ ] = (byte)c;
+                if( b4Posn > 3 ) {
+                    if( outBuffPosn + 3 <= outBuff.length ) {
+                        outBuffPosn += decode4to3( b4, 0, outBuff, outBuffPosn, NO_OPTIONS );
+                    } else {
+                        // Usually the final, padded quartet; decode4to3 always wants room for three bytes
+                        byte[] b3            = new byte[3];
+                        int    decodedLength = decode4to3( b4, 0, b3, 0, NO_OPTIONS );
+
+                        if( outBuffPosn + decodedLength > outBuff.length ) {
+                            // Only possible if the input contains white space or embedded padding
+                            outBuff = java.util.Arrays.copyOf( outBuff, outBuffPosn + decodedLength );
+                        }   // end if: out of room
+
+                        System.arraycopy( b3, 0, outBuff, outBuffPosn, decodedLength );
+                        outBuffPosn += decodedLength;
+                    }   // end else: final quartet
+                    b4Posn = 0;
+
+                    if( c == EQUALS_SIGN ) {
+                        break;
+                    }   // end if: equals sign
+                }   // end if: quartet built
+            }   // end if: equals sign or better
+        }   // each input character
+
+        return outBuffPosn == outBuff.length ? outBuff : java.util.Arrays.copyOf( outBuff, outBuffPosn );
+    }   // end decode
+
+
+
+
     /**
      * Decodes data from Base64 notation, automatically
      * detecting gzip-compressed data and decompressing it.
@@ -8,10 +8,13 @@ package org.whispersystems.textsecuregcm.util;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 
@@ -34,5 +37,39 @@ public class ByteArrayAdapter {
       return Base64.decodeWithoutPadding(jsonParser.getValueAsString());
     }
   }
-}
 
+  /**
+   * Decodes base64 values directly from the parser's text buffer rather than building an intermediate String first.
+   * Values that aren't valid base64 are treated as absent.
+   */
+  public static class DirectDeserializing extends JsonDeserializer<byte[]> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectDeserializing.class);
+
+    @Override
+    public byte[] deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
+        throws IOException, JsonProcessingException
+    {
+      final char[] text;
+      final int    offset;
+      final int    length;
+
+      if (jsonParser.hasToken(JsonToken.VALUE_STRING)) {
+        text   = jsonParser.getTextCharacters();
+        offset = jsonParser.getTextOffset();
+        length = jsonParser.getTextLength();
+      } else {
+        text   = jsonParser.getValueAsString("").toCharArray();
+        offset = 0;
+        length = text.length;
+      }
+
+      try {
+        return Base64.decode(text, offset, length);
+      } catch (IOException | IllegalArgumentException e) {
+        logger.debug("Bad B64", e);
+        return null;
+      }
+    }
+  }
+}
@@ -9,6 +9,7 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.push.ApnFallbackManager;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.push.MessageSender;
@@ -18,6 +19,7 @@ import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
 import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.Util;
 import org.whispersystems.websocket.session.WebSocketSessionContext;
 import org.whispersystems.websocket.setup.WebSocketConnectListener;
 
@@ -36,16 +38,24 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
   private final ApnFallbackManager    apnFallbackManager;
   private final ClientPresenceManager clientPresenceManager;
 
+  private final MessageDeliveryConfiguration messageDeliveryConfiguration;
+  private final ConnectAdmissionController   connectAdmissionController;
+
   public AuthenticatedConnectListener(ReceiptSender receiptSender,
                                       MessagesManager messagesManager,
                                       final MessageSender messageSender, ApnFallbackManager apnFallbackManager,
-                                      ClientPresenceManager clientPresenceManager)
+                                      ClientPresenceManager clientPresenceManager,
+                                      MessageDeliveryConfiguration messageDeliveryConfiguration,
+                                      ConnectAdmissionController connectAdmissionController)
   {
     this.receiptSender         = receiptSender;
     this.messagesManager       = messagesManager;
     this.messageSender         = messageSender;
     this.apnFallbackManager    = apnFallbackManager;
     this.clientPresenceManager = clientPresenceManager;
+
+    this.messageDeliveryConfiguration = messageDeliveryConfiguration;
+    this.connectAdmissionController   = connectAdmissionController;
   }
 
   @Override
@@ -56,14 +66,19 @@ public class AuthenticatedConnectListener implements WebSocketConnectListener {
       final Timer.Context           timer          = durationTimer.time();
       final WebSocketConnection     connection     = new WebSocketConnection(receiptSender,
                                                                              messagesManager, account, device,
-                                                                             context.getClient());
+                                                                             context.getClient(),
+                                                                             messageDeliveryConfiguration);
 
       openWebsocketCounter.inc();
-      RedisOperation.unchecked(() -> apnFallbackManager.cancel(account, device));
+
+      // APN fallbacks are only ever scheduled for devices with a VoIP token, so there's nothing to cancel for anyone else
+      if (!Util.isEmpty(device.getVoipApnId())) {
+        RedisOperation.unchecked(() -> apnFallbackManager.cancel(account, device));
+      }
 
       clientPresenceManager.setPresent(account.getUuid(), device.getId(), connection);
       messagesManager.addMessageAvailabilityListener(account.getUuid(), device.getId(), connection);
-      connection.start();
+      connectAdmissionController.admitStoredMessageDrain(connection::start);
 
       context.addListener(new WebSocketSessionContext.WebSocketEventListener() {
         @Override
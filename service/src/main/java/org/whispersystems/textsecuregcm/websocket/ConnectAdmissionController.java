@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.time.Clock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Paces the stored-message drains that start when clients connect. Drains up to a configured rate start immediately;
+ * beyond that, each drain is queued behind the ones already waiting and started later with some random jitter, so a
+ * reconnect storm turns into a steady stream of reads rather than a spike.
+ */
+public class ConnectAdmissionController {
+
+  private static final MetricRegistry metricRegistry      = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private static final Meter          immediateDrainMeter = metricRegistry.meter(name(ConnectAdmissionController.class, "immediateDrains"));
+  private static final Meter          deferredDrainMeter  = metricRegistry.meter(name(ConnectAdmissionController.class, "deferredDrains" ));
+
+  // Counted across all controllers so the gauge can be registered exactly once
+  private static final AtomicInteger deferredDrains = new AtomicInteger(0);
+
+  static {
+    metricRegistry.gauge(name(ConnectAdmissionController.class, "pendingDrains"), () -> deferredDrains::get);
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectAdmissionController.class);
+
+  // A second's worth of drains may start immediately, so ordinary fluctuations in connection rate are never delayed
+  private static final long BURST_MILLIS = 1000;
+
+  private final ScheduledExecutorService executorService;
+  private final Clock                    clock;
+
+  private final double intervalMillis;
+  private final long   maxJitterMillis;
+  private final long   maxDelayMillis;
+
+  // The time at which the next drain would start if drains were spread out evenly at the configured rate
+  private double nextDrainMillis;
+
+  public ConnectAdmissionController(final MessageDeliveryConfiguration configuration, final ScheduledExecutorService executorService) {
+    this(configuration, executorService, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  ConnectAdmissionController(final MessageDeliveryConfiguration configuration, final ScheduledExecutorService executorService, final Clock clock) {
+    this.executorService = executorService;
+    this.clock           = clock;
+    this.intervalMillis  = 1000.0 / configuration.getImmediateDrainsPerSecond();
+    this.maxJitterMillis = configuration.getMaxDrainJitterMillis();
+    this.maxDelayMillis  = configuration.getMaxDrainDelayMillis();
+  }
+
+  public void admitStoredMessageDrain(final Runnable drain) {
+    final long delayMillis = getDelayMillis();
+
+    if (delayMillis <= 0) {
+      immediateDrainMeter.mark();
+      drain.run();
+    } else {
+      deferredDrainMeter.mark();
+      deferredDrains.incrementAndGet();
+
+      final long jitterMillis = maxJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(maxJitterMillis + 1) : 0;
+
+      executorService.schedule(() -> {
+        deferredDrains.decrementAndGet();
+
+        try {
+          drain.run();
+        } catch (final Exception e) {
+          logger.warn("Failed to drain stored messages", e);
+        }
+      }, Math.min(delayMillis + jitterMillis, maxDelayMillis), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @VisibleForTesting
+  int getDeferredDrainCount() {
+    return deferredDrains.get();
+  }
+
+  private synchronized long getDelayMillis() {
+    final long   now       = clock.millis();
+    final double drainTime = Math.max(nextDrainMillis, now);
+
+    // Drains are never held back longer than maxDelayMillis, so don't let the schedule run further ahead than that
+    nextDrainMillis = Math.min(drainTime + intervalMillis, now + BURST_MILLIS + maxDelayMillis);
+
+    return (long) Math.ceil(drainTime - now - BURST_MILLIS);
+  }
+}
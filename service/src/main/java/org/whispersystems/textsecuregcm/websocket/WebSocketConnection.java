@@ -16,6 +16,7 @@ import io.micrometer.core.instrument.Tag;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.controllers.MessageController;
 import org.whispersystems.textsecuregcm.controllers.NoSuchUserException;
 import org.whispersystems.textsecuregcm.entities.CryptoEncodingException;
@@ -39,11 +40,14 @@ import org.whispersystems.websocket.WebSocketClient;
 import org.whispersystems.websocket.messages.WebSocketResponseMessage;
 
 import javax.ws.rs.WebApplicationException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -61,9 +65,14 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private static final Meter          messageAvailableMeter          = metricRegistry.meter(name(WebSocketConnection.class, "messagesAvailable"));
   private static final Meter          ephemeralMessageAvailableMeter = metricRegistry.meter(name(WebSocketConnection.class, "ephemeralMessagesAvailable"));
   private static final Meter          messagesPersistedMeter         = metricRegistry.meter(name(WebSocketConnection.class, "messagesPersisted"));
+  private static final Meter          localMessageMeter              = metricRegistry.meter(name(WebSocketConnection.class, "localMessages"));
   private static final Meter          bytesSentMeter                 = metricRegistry.meter(name(WebSocketConnection.class, "bytes_sent"));
   private static final Meter          sendFailuresMeter              = metricRegistry.meter(name(WebSocketConnection.class, "send_failures"));
   private static final Meter          discardedMessagesMeter         = metricRegistry.meter(name(WebSocketConnection.class, "discardedMessages"));
+  private static final Histogram      outboundQueueDepthHistogram    = metricRegistry.histogram(name(WebSocketConnection.class, "outboundQueueDepth"));
+  private static final Histogram      outstandingRequestsHistogram   = metricRegistry.histogram(name(WebSocketConnection.class, "outstandingRequests"));
+  private static final Histogram      outstandingBytesHistogram      = metricRegistry.histogram(name(WebSocketConnection.class, "outstandingBytes"));
+  private static final Meter          prefetchedPagesMeter           = metricRegistry.meter(name(WebSocketConnection.class, "prefetchedPages"));
 
   private static final String DISPLACEMENT_COUNTER_NAME         = name(WebSocketConnection.class, "displacement");
   private static final String NON_SUCCESS_RESPONSE_COUNTER_NAME = name(WebSocketConnection.class, "clientNonSuccessResponse");
@@ -73,6 +82,8 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   @VisibleForTesting
   static final int MAX_DESKTOP_MESSAGE_SIZE = 1024 * 1024;
 
+  private static final int MAX_EPHEMERAL_MESSAGES_PER_TAKE = 100;
+
   private static final Logger logger = LoggerFactory.getLogger(WebSocketConnection.class);
 
   private final ReceiptSender    receiptSender;
@@ -83,10 +94,13 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private final WebSocketClient  client;
 
   private final boolean          isDesktopClient;
+  private final int              maxInFlightStoredMessages;
 
   private final Semaphore                           processStoredMessagesSemaphore = new Semaphore(1);
   private final AtomicReference<StoredMessageState> storedMessageState             = new AtomicReference<>(StoredMessageState.PERSISTED_NEW_MESSAGES_AVAILABLE);
   private final AtomicBoolean                       sentInitialQueueEmptyMessage   = new AtomicBoolean(false);
+  private final AtomicBoolean                       admitted                       = new AtomicBoolean(false);
+  private final AtomicBoolean                       stopped                        = new AtomicBoolean(false);
 
   private enum StoredMessageState {
     EMPTY,
@@ -99,6 +113,16 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
                              Account account,
                              Device device,
                              WebSocketClient client)
+  {
+    this(receiptSender, messagesManager, account, device, client, new MessageDeliveryConfiguration());
+  }
+
+  public WebSocketConnection(ReceiptSender receiptSender,
+                             MessagesManager messagesManager,
+                             Account account,
+                             Device device,
+                             WebSocketClient client,
+                             MessageDeliveryConfiguration messageDeliveryConfiguration)
   {
     this.receiptSender   = receiptSender;
     this.messagesManager = messagesManager;
@@ -114,18 +138,29 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       maybePlatform = Optional.empty();
     }
 
-    this.isDesktopClient = maybePlatform.map(platform -> platform == ClientPlatform.DESKTOP).orElse(false);
+    this.isDesktopClient           = maybePlatform.map(platform -> platform == ClientPlatform.DESKTOP).orElse(false);
+    this.maxInFlightStoredMessages = messageDeliveryConfiguration.getMaxInFlightMessages(maybePlatform);
   }
 
+  /**
+   * Starts draining stored messages. Until then, notifications of newly-available messages are only recorded, so a
+   * connection whose start has been deferred doesn't begin draining early.
+   */
   public void start() {
-    processStoredMessages();
+    admitted.set(true);
+
+    // Starting may be deferred until after the client has already gone away
+    if (!stopped.get()) {
+      processStoredMessages();
+    }
   }
 
   public void stop() {
+    stopped.set(true);
     client.close(1000, "OK");
   }
 
-  private CompletableFuture<WebSocketResponseMessage> sendMessage(final Envelope message, final Optional<StoredMessageInfo> storedMessageInfo) {
+  private CompletableFuture<WebSocketResponseMessage> sendMessage(final Envelope message) {
     try {
       String           header;
       Optional<byte[]> body;
@@ -140,14 +175,13 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
 
       sendMessageMeter.mark();
       bytesSentMeter.mark(body.map(bytes -> bytes.length).orElse(0));
+      outboundQueueDepthHistogram.update(client.getQueuedRequestCount());
+      outstandingRequestsHistogram.update(client.getOutstandingRequestCount());
+      outstandingBytesHistogram.update(client.getOutstandingBytes());
 
       return client.sendRequest("PUT", "/api/v1/message", List.of(header, TimestampHeaderUtil.getTimestampHeader()), body).whenComplete((response, throwable) -> {
         if (throwable == null) {
           if (isSuccessResponse(response)) {
-            if (storedMessageInfo.isPresent()) {
-              messagesManager.delete(account.getNumber(), account.getUuid(), device.getId(), storedMessageInfo.get().id, storedMessageInfo.get().cached);
-            }
-
             if (message.getType() != Envelope.Type.RECEIPT) {
               recordMessageDeliveryDuration(message.getTimestamp(), device);
               sendDeliveryReceiptFor(message);
@@ -200,10 +234,15 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   @VisibleForTesting
   void processStoredMessages() {
     if (processStoredMessagesSemaphore.tryAcquire()) {
-      final StoredMessageState      state              = storedMessageState.getAndSet(StoredMessageState.EMPTY);
-      final CompletableFuture<Void> queueClearedFuture = new CompletableFuture<>();
+      final StoredMessageState state = storedMessageState.getAndSet(StoredMessageState.EMPTY);
 
-      sendNextMessagePage(state != StoredMessageState.PERSISTED_NEW_MESSAGES_AVAILABLE, queueClearedFuture);
+      CompletableFuture<Void> queueClearedFuture;
+
+      try {
+        queueClearedFuture = sendNextMessagePage(state != StoredMessageState.PERSISTED_NEW_MESSAGES_AVAILABLE, Optional.empty(), new ArrayDeque<>());
+      } catch (final Exception e) {
+        queueClearedFuture = CompletableFuture.failedFuture(e);
+      }
 
       queueClearedFuture.whenComplete((v, cause) -> {
         if (cause == null && sentInitialQueueEmptyMessage.compareAndSet(false, true)) {
@@ -219,60 +258,132 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     }
   }
 
-  private void sendNextMessagePage(final boolean cachedMessagesOnly, final CompletableFuture<Void> queueClearedFuture) {
-    final OutgoingMessageEntityList messages    = messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), cachedMessagesOnly);
+  /**
+   * Sends a page of stored messages and, eventually, every page after it.
+   *
+   * @param inFlightMessages the acknowledgement futures of stored messages sent in this pass, oldest first; shared
+   *                         across pages so the in-flight window slides continuously from one page into the next
+   *
+   * @return a future that completes when this page and every page after it have been acknowledged and removed
+   */
+  private CompletableFuture<Void> sendNextMessagePage(final boolean cachedMessagesOnly, final Optional<OutgoingMessageEntity> lastPersistedMessage, final Deque<CompletableFuture<?>> inFlightMessages) {
+    final OutgoingMessageEntityList messages    = messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), cachedMessagesOnly, lastPersistedMessage);
     final CompletableFuture<?>[]    sendFutures = new CompletableFuture[messages.getMessages().size()];
 
-    for (int i = 0; i < messages.getMessages().size(); i++) {
-      final OutgoingMessageEntity message = messages.getMessages().get(i);
-      final Envelope.Builder      builder = Envelope.newBuilder()
-                                                    .setType(Envelope.Type.valueOf(message.getType()))
-                                                    .setTimestamp(message.getTimestamp())
-                                                    .setServerTimestamp(message.getServerTimestamp());
-
-      if (!Util.isEmpty(message.getSource())) {
-        builder.setSource(message.getSource())
-               .setSourceDevice(message.getSourceDevice());
-        if (message.getSourceUuid() != null) {
-          builder.setSourceUuid(message.getSourceUuid().toString());
-        }
-      }
+    // Acknowledged (or discarded) messages are removed together once every message in the page has been sent, rather
+    // than one at a time as each acknowledgement arrives.
+    final List<OutgoingMessageEntity> messagesToRemove = Collections.synchronizedList(new ArrayList<>());
 
-      if (message.getMessage() != null) {
-        builder.setLegacyMessage(ByteString.copyFrom(message.getMessage()));
-      }
+    Optional<OutgoingMessageEntity> lastPersistedMessageInPage = Optional.empty();
+    int                             persistedMessagesInPage    = 0;
 
-      if (message.getContent() != null) {
-        builder.setContent(ByteString.copyFrom(message.getContent()));
-      }
+    // Each message waits for the previous one to be handed to the client, for the oldest of the last
+    // maxInFlightStoredMessages messages to be acknowledged, and for room in the client's outbound window, so draining
+    // pauses while a slow client works through what it already has. If a message can't be delivered at all, everything
+    // queued behind it in the window fails too and the pass ends rather than fetching pages nobody will receive.
+    CompletableFuture<?> previousMessageSent = CompletableFuture.completedFuture(null);
+
+    for (int i = 0; i < messages.getMessages().size(); i++) {
+      final OutgoingMessageEntity message = messages.getMessages().get(i);
 
-      if (message.getRelay() != null && !message.getRelay().isEmpty()) {
-        builder.setRelay(message.getRelay());
+      if (!message.isCached()) {
+        lastPersistedMessageInPage = Optional.of(message);
+        persistedMessagesInPage++;
       }
 
-      final Envelope envelope = builder.build();
+      final Envelope envelope = newEnvelopeBuilder(message).build();
 
       if (envelope.getSerializedSize() > MAX_DESKTOP_MESSAGE_SIZE && isDesktopClient) {
-        messagesManager.delete(account.getNumber(), account.getUuid(), device.getId(), message.getId(), message.isCached());
+        messagesToRemove.add(message);
         discardedMessagesMeter.mark();
 
         sendFutures[i] = CompletableFuture.completedFuture(null);
       } else {
-        sendFutures[i] = sendMessage(builder.build(), Optional.of(new StoredMessageInfo(message.getId(), message.isCached())));
+        final CompletableFuture<?> windowOpen = inFlightMessages.size() >= maxInFlightStoredMessages
+            ? inFlightMessages.removeFirst()
+            : CompletableFuture.completedFuture(null);
+
+        final CompletableFuture<CompletableFuture<WebSocketResponseMessage>> messageSent =
+            CompletableFuture.allOf(previousMessageSent, windowOpen)
+                             .thenCompose(ignored -> client.whenWritable())
+                             .thenApply(ignored -> sendMessage(envelope));
+
+        previousMessageSent = messageSent;
+        sendFutures[i]      = messageSent.thenCompose(response -> response).thenAccept(response -> {
+          if (isSuccessResponse(response)) {
+            messagesToRemove.add(message);
+          }
+        });
+
+        inFlightMessages.addLast(sendFutures[i]);
       }
     }
 
-    CompletableFuture.allOf(sendFutures).whenComplete((v, cause) -> {
-      if (cause == null) {
-        if (messages.hasMore()) {
-          sendNextMessagePage(cachedMessagesOnly, queueClearedFuture);
-        } else {
-          queueClearedFuture.complete(null);
-        }
-      } else {
-        queueClearedFuture.completeExceptionally(cause);
+    // If this page didn't fill up with persisted messages, we've read everything in the database for this pass; messages
+    // persisted in the meantime will trigger another pass via handleMessagesPersisted.
+    final boolean                         persistedMessagesExhausted = cachedMessagesOnly || persistedMessagesInPage < messages.getMessages().size();
+    final Optional<OutgoingMessageEntity> nextPageCursor             = lastPersistedMessageInPage.isPresent() ? lastPersistedMessageInPage : lastPersistedMessage;
+
+    final CompletableFuture<Void> pageCleared = CompletableFuture.allOf(sendFutures).handle((v, cause) -> {
+      if (!messagesToRemove.isEmpty()) {
+        messagesManager.delete(account.getNumber(), account.getUuid(), device.getId(), messagesToRemove);
+      }
+
+      if (cause != null) {
+        throw new CompletionException(cause);
       }
+
+      return null;
     });
+
+    if (!messages.hasMore()) {
+      return pageCleared;
+    }
+
+    if (persistedMessagesExhausted) {
+      // Cached messages are always read from the head of the cache, so the next page can't be fetched until this one
+      // has been removed.
+      return pageCleared.thenCompose(ignored -> sendNextMessagePage(true, nextPageCursor, inFlightMessages));
+    }
+
+    // Persisted messages are read by cursor, so the next page can be fetched as soon as this one has been handed to the
+    // client instead of waiting a full round trip for its acknowledgements. The in-flight window still bounds how far
+    // ahead of the client we get.
+    final CompletableFuture<Void> nextPagesCleared = previousMessageSent.thenCompose(ignored -> {
+      prefetchedPagesMeter.mark();
+      return sendNextMessagePage(false, nextPageCursor, inFlightMessages);
+    });
+
+    return CompletableFuture.allOf(pageCleared, nextPagesCleared);
+  }
+
+  public static Envelope.Builder newEnvelopeBuilder(final OutgoingMessageEntity message) {
+    final Envelope.Builder builder = Envelope.newBuilder()
+                                             .setType(Envelope.Type.valueOf(message.getType()))
+                                             .setTimestamp(message.getTimestamp())
+                                             .setServerTimestamp(message.getServerTimestamp());
+
+    if (!Util.isEmpty(message.getSource())) {
+      builder.setSource(message.getSource())
+             .setSourceDevice(message.getSourceDevice());
+      if (message.getSourceUuid() != null) {
+        builder.setSourceUuid(message.getSourceUuid().toString());
+      }
+    }
+
+    if (message.getMessage() != null) {
+      builder.setLegacyMessage(ByteString.copyFrom(message.getMessage()));
+    }
+
+    if (message.getContent() != null) {
+      builder.setContent(ByteString.copyFrom(message.getContent()));
+    }
+
+    if (message.getRelay() != null && !message.getRelay().isEmpty()) {
+      builder.setRelay(message.getRelay());
+    }
+
+    return builder;
   }
 
   @Override
@@ -280,15 +391,21 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     messageAvailableMeter.mark();
 
     storedMessageState.compareAndSet(StoredMessageState.EMPTY, StoredMessageState.CACHED_NEW_MESSAGES_AVAILABLE);
-    processStoredMessages();
+
+    if (admitted.get()) {
+      processStoredMessages();
+    }
   }
 
   @Override
   public void handleNewEphemeralMessageAvailable() {
     ephemeralMessageAvailableMeter.mark();
 
-    messagesManager.takeEphemeralMessage(account.getUuid(), device.getId())
-                   .ifPresent(message -> sendMessage(message, Optional.empty()));
+    // Ephemeral messages may arrive in bursts; rather than taking one message per notification, take everything that's
+    // waiting and let later notifications find an empty queue.
+    for (final Envelope message : messagesManager.takeEphemeralMessages(account.getUuid(), device.getId(), MAX_EPHEMERAL_MESSAGES_PER_TAKE)) {
+      sendMessage(message);
+    }
   }
 
   @Override
@@ -296,23 +413,30 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     messagesPersistedMeter.mark();
 
     storedMessageState.set(StoredMessageState.PERSISTED_NEW_MESSAGES_AVAILABLE);
-    processStoredMessages();
+
+    if (admitted.get()) {
+      processStoredMessages();
+    }
   }
 
   @Override
-  public void handleDisplacement() {
-    Metrics.counter(DISPLACEMENT_COUNTER_NAME, List.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()))).increment();
+  public CompletableFuture<Boolean> handleLocalMessage(final Envelope message) {
+    localMessageMeter.mark();
 
-    client.hardDisconnectQuietly();
+    return sendMessage(message).thenApply(this::isSuccessResponse);
   }
 
-  private static class StoredMessageInfo {
-    private final long    id;
-    private final boolean cached;
+  @Override
+  public boolean isStoredMessageQueueDrained() {
+    return sentInitialQueueEmptyMessage.get()
+        && storedMessageState.get() == StoredMessageState.EMPTY
+        && processStoredMessagesSemaphore.availablePermits() > 0;
+  }
 
-    private StoredMessageInfo(long id, boolean cached) {
-      this.id     = id;
-      this.cached = cached;
-    }
+  @Override
+  public void handleDisplacement() {
+    Metrics.counter(DISPLACEMENT_COUNTER_NAME, List.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()))).increment();
+
+    client.hardDisconnectQuietly();
   }
 }
@@ -0,0 +1,6 @@
+local queueKey      = KEYS[1]
+local message       = ARGV[1]
+local ttlSeconds    = ARGV[2]
+
+redis.call("RPUSH", queueKey, message)
+redis.call("EXPIRE", queueKey, ttlSeconds)
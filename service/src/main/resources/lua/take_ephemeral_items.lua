@@ -0,0 +1,10 @@
+local queueKey = KEYS[1]
+local limit    = tonumber(ARGV[1])
+
+local items = redis.call("LRANGE", queueKey, 0, limit - 1)
+
+if #items > 0 then
+    redis.call("LTRIM", queueKey, #items, -1)
+end
+
+return items
@@ -13,9 +13,13 @@ import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.metrics.PushLatencyManager;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.tests.util.SynchronousExecutorService;
 
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -36,6 +40,7 @@ public class MessageSenderTest {
     private GCMSender             gcmSender;
     private APNSender             apnSender;
     private MessageSender         messageSender;
+    private MessageSender         localDeliveryMessageSender;
 
     private static final UUID ACCOUNT_UUID = UUID.randomUUID();
     private static final long DEVICE_ID = 1L;
@@ -56,7 +61,18 @@ public class MessageSenderTest {
                                                   messagesManager,
                                                   gcmSender,
                                                   apnSender,
-                                                  mock(PushLatencyManager.class));
+                                                  mock(PushLatencyManager.class),
+                                                  new SynchronousExecutorService(),
+                                                  false);
+
+        localDeliveryMessageSender = new MessageSender(mock(ApnFallbackManager.class),
+                                                       clientPresenceManager,
+                                                       messagesManager,
+                                                       gcmSender,
+                                                       apnSender,
+                                                       mock(PushLatencyManager.class),
+                                                       new SynchronousExecutorService(),
+                                                       true);
 
         when(account.getUuid()).thenReturn(ACCOUNT_UUID);
         when(device.getId()).thenReturn(DEVICE_ID);
@@ -140,6 +156,97 @@ public class MessageSenderTest {
         verifyZeroInteractions(apnSender);
     }
 
+    @Test
+    public void testSendOnlineMessageClientLocallyPresent() throws Exception {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+        when(clientPresenceManager.isLocallyPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(messagesManager.getLocalMessageAvailabilityListener(ACCOUNT_UUID, DEVICE_ID)).thenReturn(Optional.of(listener));
+        when(listener.handleLocalMessage(message)).thenReturn(CompletableFuture.completedFuture(true));
+        when(device.getGcmId()).thenReturn("gcm-id");
+
+        messageSender.sendMessage(account, device, message, true);
+
+        verify(listener).handleLocalMessage(message);
+        verify(messagesManager, never()).insertEphemeral(any(), anyLong(), any());
+        verify(messagesManager, never()).insert(any(), anyLong(), any());
+        verify(clientPresenceManager, never()).isPresent(any(), anyLong());
+        verifyZeroInteractions(gcmSender);
+        verifyZeroInteractions(apnSender);
+    }
+
+    @Test
+    public void testSendMessageClientLocallyPresentLocalDeliveryDisabled() throws Exception {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+        when(clientPresenceManager.isLocallyPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(messagesManager.getLocalMessageAvailabilityListener(ACCOUNT_UUID, DEVICE_ID)).thenReturn(Optional.of(listener));
+        when(device.getGcmId()).thenReturn("gcm-id");
+
+        messageSender.sendMessage(account, device, message, false);
+
+        verify(listener, never()).handleLocalMessage(any());
+        verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+        verifyZeroInteractions(gcmSender);
+        verifyZeroInteractions(apnSender);
+    }
+
+    @Test
+    public void testSendMessageClientLocallyPresentQueueNotDrained() throws Exception {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+        when(clientPresenceManager.isLocallyPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(messagesManager.getLocalMessageAvailabilityListener(ACCOUNT_UUID, DEVICE_ID)).thenReturn(Optional.of(listener));
+        when(listener.isStoredMessageQueueDrained()).thenReturn(false);
+        when(device.getGcmId()).thenReturn("gcm-id");
+
+        localDeliveryMessageSender.sendMessage(account, device, message, false);
+
+        verify(listener, never()).handleLocalMessage(any());
+        verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+        verifyZeroInteractions(gcmSender);
+        verifyZeroInteractions(apnSender);
+    }
+
+    @Test
+    public void testSendMessageClientLocallyPresentAcknowledged() throws Exception {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+        when(clientPresenceManager.isLocallyPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(messagesManager.getLocalMessageAvailabilityListener(ACCOUNT_UUID, DEVICE_ID)).thenReturn(Optional.of(listener));
+        when(listener.isStoredMessageQueueDrained()).thenReturn(true);
+        when(listener.handleLocalMessage(message)).thenReturn(CompletableFuture.completedFuture(true));
+        when(device.getGcmId()).thenReturn("gcm-id");
+
+        localDeliveryMessageSender.sendMessage(account, device, message, false);
+
+        verify(listener).handleLocalMessage(message);
+        verify(messagesManager, never()).insert(any(), anyLong(), any());
+        verifyZeroInteractions(gcmSender);
+        verifyZeroInteractions(apnSender);
+    }
+
+    @Test
+    public void testSendMessageClientLocallyPresentNotAcknowledged() throws Exception {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+        when(clientPresenceManager.isLocallyPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+        when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(false);
+        when(messagesManager.getLocalMessageAvailabilityListener(ACCOUNT_UUID, DEVICE_ID)).thenReturn(Optional.of(listener));
+        when(listener.isStoredMessageQueueDrained()).thenReturn(true);
+        when(listener.handleLocalMessage(message)).thenReturn(CompletableFuture.completedFuture(false));
+        when(device.getGcmId()).thenReturn("gcm-id");
+
+        localDeliveryMessageSender.sendMessage(account, device, message, false);
+
+        verify(listener).handleLocalMessage(message);
+        verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+        verify(gcmSender).sendMessage(any());
+        verifyZeroInteractions(apnSender);
+    }
+
     private MessageProtos.Envelope generateRandomMessage() {
         return MessageProtos.Envelope.newBuilder()
                 .setTimestamp(System.currentTimeMillis())
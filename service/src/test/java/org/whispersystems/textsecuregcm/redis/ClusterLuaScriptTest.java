@@ -140,4 +140,33 @@ public class ClusterLuaScriptTest extends AbstractRedisClusterTest {
         assertArrayEquals("OK".getBytes(StandardCharsets.UTF_8), (byte[])script.executeBinary(List.of(key.getBytes(StandardCharsets.UTF_8)), List.of(value.getBytes(StandardCharsets.UTF_8))));
         assertEquals(value, redisCluster.withCluster(connection -> connection.sync().get(key)));
     }
+
+    @Test
+    public void testExecuteBinaryAsync() {
+        final String key   = "key";
+        final String value = "value";
+
+        final FaultTolerantRedisCluster redisCluster = getRedisCluster();
+
+        final ClusterLuaScript script = new ClusterLuaScript(redisCluster, "return redis.call(\"SET\", KEYS[1], ARGV[1])", ScriptOutputType.VALUE);
+
+        assertArrayEquals("OK".getBytes(StandardCharsets.UTF_8), (byte[])script.executeBinaryAsync(List.of(key.getBytes(StandardCharsets.UTF_8)), List.of(value.getBytes(StandardCharsets.UTF_8))).join());
+        assertEquals(value, redisCluster.withCluster(connection -> connection.sync().get(key)));
+    }
+
+    @Test
+    public void testExecuteBinaryAsyncNoScriptException() {
+        final String key   = "key";
+        final String value = "value";
+
+        final FaultTolerantRedisCluster redisCluster = getRedisCluster();
+
+        final ClusterLuaScript script = new ClusterLuaScript(redisCluster, "return redis.call(\"SET\", KEYS[1], ARGV[1])", ScriptOutputType.VALUE);
+
+        // Remove the scripts created by the CLusterLuaScript constructor
+        redisCluster.useCluster(connection -> connection.sync().upstream().commands().scriptFlush());
+
+        assertArrayEquals("OK".getBytes(StandardCharsets.UTF_8), (byte[])script.executeBinaryAsync(List.of(key.getBytes(StandardCharsets.UTF_8)), List.of(value.getBytes(StandardCharsets.UTF_8))).join());
+        assertEquals(value, redisCluster.withCluster(connection -> connection.sync().get(key)));
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.redis;
+
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RedisKeyBuilderTest {
+
+  private static final byte[] PREFIX = RedisKeyBuilder.prefix("user_queue");
+
+  @Test
+  public void testBuildDeviceKey() {
+    for (final UUID uuid : new UUID[] { UUID.randomUUID(), new UUID(0, 0), new UUID(-1, -1), UUID.fromString("1b363a31-a429-4fb6-8959-984a025e72ff") }) {
+      for (final long deviceId : new long[] { 0, 1, 7, 255, 256, 10_000, Long.MAX_VALUE }) {
+        final String expected = "user_queue::{" + uuid + "::" + deviceId + "}";
+        final byte[] key      = RedisKeyBuilder.forDevice(uuid, deviceId).build(PREFIX);
+
+        assertArrayEquals(expected, expected.getBytes(StandardCharsets.UTF_8), key);
+      }
+    }
+  }
+
+  @Test
+  public void testBuildHashTagKey() {
+    assertArrayEquals("user_queue::{abc}".getBytes(StandardCharsets.UTF_8), RedisKeyBuilder.forHashTag("abc").build(PREFIX));
+  }
+
+  @Test
+  public void testGetSlot() {
+    final UUID            uuid       = UUID.randomUUID();
+    final RedisKeyBuilder keyBuilder = RedisKeyBuilder.forDevice(uuid, 3);
+
+    assertEquals(SlotHash.getSlot("user_queue::{" + uuid + "::3}"), keyBuilder.getSlot());
+    assertEquals(SlotHash.getSlot(keyBuilder.build(RedisKeyBuilder.prefix("user_queue_metadata"))), keyBuilder.getSlot());
+  }
+}
@@ -7,6 +7,9 @@ package org.whispersystems.textsecuregcm.sqs;
 
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
@@ -16,12 +19,15 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.whispersystems.textsecuregcm.storage.Account;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -72,6 +78,47 @@ public class DirectoryQueueTest {
         }
     }
 
+    @Test
+    public void testRefreshRegisteredUsers() {
+        final AmazonSQS      sqs            = mock(AmazonSQS.class);
+        final DirectoryQueue directoryQueue = new DirectoryQueue(List.of("sqs://first", "sqs://second"), sqs);
+
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(new SendMessageBatchResult());
+
+        final List<Account> accounts = new ArrayList<>();
+
+        for (int i = 0; i < 15; i++) {
+            final Account account = mock(Account.class);
+            when(account.getNumber()).thenReturn("+1800555" + (1000 + i));
+            when(account.getUuid()).thenReturn(UUID.randomUUID());
+            when(account.isEnabled()).thenReturn(true);
+            when(account.isDiscoverableByPhoneNumber()).thenReturn(i % 2 == 0);
+
+            accounts.add(account);
+        }
+
+        directoryQueue.refreshRegisteredUsers(accounts);
+
+        final ArgumentCaptor<SendMessageBatchRequest> requestCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(4)).sendMessageBatch(requestCaptor.capture());
+        verify(sqs, never()).sendMessage(any(SendMessageRequest.class));
+
+        final List<SendMessageBatchRequest> requests = requestCaptor.getAllValues();
+
+        assertEquals(10, requests.get(0).getEntries().size());
+        assertEquals(10, requests.get(1).getEntries().size());
+        assertEquals(5,  requests.get(2).getEntries().size());
+        assertEquals(5,  requests.get(3).getEntries().size());
+
+        for (int i = 0; i < 10; i++) {
+            final SendMessageBatchRequestEntry entry = requests.get(0).getEntries().get(i);
+
+            assertEquals(accounts.get(i).getNumber(), entry.getMessageGroupId());
+            assertEquals(new MessageAttributeValue().withDataType("String").withStringValue(i % 2 == 0 ? "add" : "delete"),
+                         entry.getMessageAttributes().get("action"));
+        }
+    }
+
     @SuppressWarnings("unused")
     private Object argumentsForTestRefreshRegisteredUser() {
         return new Object[] {
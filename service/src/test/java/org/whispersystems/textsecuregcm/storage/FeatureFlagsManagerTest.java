@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.storage;
 import com.opentable.db.postgres.embedded.LiquibasePreparer;
 import com.opentable.db.postgres.junit.EmbeddedPostgresRules;
 import com.opentable.db.postgres.junit.PreparedDbRule;
+import io.micrometer.core.instrument.Gauge;
 import org.jdbi.v3.core.Jdbi;
 import org.junit.Before;
 import org.junit.Rule;
@@ -17,6 +18,8 @@ import org.whispersystems.textsecuregcm.configuration.CircuitBreakerConfiguratio
 import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -48,4 +51,23 @@ public class FeatureFlagsManagerTest {
         featureFlagsManager.setFeatureFlag(flagName, false);
         assertFalse(featureFlagsManager.isFeatureFlagActive(flagName));
     }
+
+    @Test
+    public void testGauges() {
+        final String flagName = "testGaugeFlag";
+
+        featureFlagsManager.setFeatureFlag(flagName, true);
+
+        final Gauge gauge = featureFlagsManager.getGauges().get(flagName);
+
+        assertNotNull(gauge);
+
+        featureFlagsManager.setFeatureFlag(flagName, false);
+
+        assertSame(gauge, featureFlagsManager.getGauges().get(flagName));
+
+        featureFlagsManager.deleteFeatureFlag(flagName);
+
+        assertFalse(featureFlagsManager.getGauges().containsKey(flagName));
+    }
 }
@@ -27,7 +27,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -35,6 +35,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -75,7 +76,7 @@ public class MessagePersisterIntegrationTest extends AbstractRedisClusterTest {
 
         when(account.getNumber()).thenReturn("+18005551234");
         when(account.getUuid()).thenReturn(accountUuid);
-        when(accountsManager.get(accountUuid)).thenReturn(Optional.of(account));
+        when(accountsManager.getAll(any())).thenReturn(Map.of(accountUuid, account));
 
         messagesCache.start();
     }
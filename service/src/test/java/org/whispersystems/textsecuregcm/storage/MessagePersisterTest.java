@@ -18,12 +18,17 @@ import org.whispersystems.textsecuregcm.redis.AbstractRedisClusterTest;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -32,6 +37,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -44,6 +50,7 @@ public class MessagePersisterTest extends AbstractRedisClusterTest {
     private Messages                 messagesDatabase;
     private MessagePersister         messagePersister;
     private AccountsManager          accountsManager;
+    private Map<UUID, Account>       accountsByUuid;
 
     private static final UUID   DESTINATION_ACCOUNT_UUID   = UUID.randomUUID();
     private static final String DESTINATION_ACCOUNT_NUMBER = "+18005551234";
@@ -63,7 +70,17 @@ public class MessagePersisterTest extends AbstractRedisClusterTest {
 
         final Account account = mock(Account.class);
 
-        when(accountsManager.get(DESTINATION_ACCOUNT_UUID)).thenReturn(Optional.of(account));
+        accountsByUuid = new HashMap<>();
+        accountsByUuid.put(DESTINATION_ACCOUNT_UUID, account);
+
+        when(accountsManager.getAll(any())).thenAnswer(invocation -> {
+            final Collection<UUID> uuids = invocation.getArgument(0);
+
+            return uuids.stream()
+                        .filter(accountsByUuid::containsKey)
+                        .collect(Collectors.toMap(Function.identity(), accountsByUuid::get));
+        });
+
         when(account.getNumber()).thenReturn(DESTINATION_ACCOUNT_NUMBER);
 
         notificationExecutorService = Executors.newSingleThreadExecutor();
@@ -147,7 +164,7 @@ public class MessagePersisterTest extends AbstractRedisClusterTest {
 
             final Account account = mock(Account.class);
 
-            when(accountsManager.get(accountUuid)).thenReturn(Optional.of(account));
+            accountsByUuid.put(accountUuid, account);
             when(account.getNumber()).thenReturn(accountNumber);
 
             insertMessages(accountUuid, deviceId, messagesPerQueue, now);
@@ -182,6 +199,45 @@ public class MessagePersisterTest extends AbstractRedisClusterTest {
                      messagesCache.getQueuesToPersist(SlotHash.getSlot(queueName), Instant.now().plus(messagePersister.getPersistDelay()), 1));
     }
 
+    @Test
+    public void testPersistNextQueuesGetAllAccountsFailed() {
+        final String  queueName    = new String(MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
+        final int     messageCount = 7;
+        final Instant now          = Instant.now();
+
+        insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
+        setNextSlotToPersist(SlotHash.getSlot(queueName));
+
+        doThrow(new RuntimeException("OH NO.")).when(accountsManager).getAll(any());
+        when(accountsManager.get(DESTINATION_ACCOUNT_UUID)).thenReturn(Optional.of(accountsByUuid.get(DESTINATION_ACCOUNT_UUID)));
+
+        messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+
+        final ArgumentCaptor<List<MessageProtos.Envelope>> messagesCaptor = ArgumentCaptor.forClass(List.class);
+
+        verify(messagesDatabase, atLeastOnce()).store(messagesCaptor.capture(), eq(DESTINATION_ACCOUNT_NUMBER), eq(DESTINATION_DEVICE_ID));
+        assertEquals(messageCount, messagesCaptor.getAllValues().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    public void testPersistNextQueuesAccountLookupRetry() {
+        final String  queueName    = new String(MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
+        final int     messageCount = 7;
+        final Instant now          = Instant.now();
+
+        insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
+        setNextSlotToPersist(SlotHash.getSlot(queueName));
+
+        doThrow(new RuntimeException("OH NO.")).when(accountsManager).getAll(any());
+        when(accountsManager.get(any(UUID.class))).thenThrow(new RuntimeException("OH NO."));
+
+        messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+
+        verify(messagesDatabase, never()).store(any(), anyString(), anyLong());
+        assertEquals(List.of(queueName),
+                     messagesCache.getQueuesToPersist(SlotHash.getSlot(queueName), Instant.now().plus(messagePersister.getPersistDelay()), 1));
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static String generateRandomQueueNameForSlot(final int slot) {
         final UUID uuid = UUID.randomUUID();
@@ -402,20 +402,47 @@ public class MessagesCacheTest extends AbstractRedisClusterTest {
     }
 
     @Test
-    public void testTakeEphemeralMessage() {
+    public void testTakeEphemeralMessages() {
         final long                   currentTime = System.currentTimeMillis();
         final UUID                   messageGuid = UUID.randomUUID();
         final MessageProtos.Envelope message     = generateRandomMessage(messageGuid, true, currentTime);
 
-        assertEquals(Optional.empty(), messagesCache.takeEphemeralMessage(DESTINATION_UUID, DESTINATION_DEVICE_ID, currentTime));
+        assertEquals(Collections.emptyList(), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10, currentTime));
 
         messagesCache.insertEphemeral(DESTINATION_UUID, DESTINATION_DEVICE_ID, message);
 
-        assertEquals(Optional.of(message), messagesCache.takeEphemeralMessage(DESTINATION_UUID, DESTINATION_DEVICE_ID, currentTime));
-        assertEquals(Optional.empty(), messagesCache.takeEphemeralMessage(DESTINATION_UUID, DESTINATION_DEVICE_ID, currentTime));
+        assertEquals(List.of(message), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10, currentTime));
+        assertEquals(Collections.emptyList(), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10, currentTime));
 
         messagesCache.insertEphemeral(DESTINATION_UUID, DESTINATION_DEVICE_ID, generateRandomMessage(UUID.randomUUID(), true, 0));
 
-        assertEquals(Optional.empty(), messagesCache.takeEphemeralMessage(DESTINATION_UUID, DESTINATION_DEVICE_ID, currentTime));
+        assertEquals(Collections.emptyList(), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10, currentTime));
+    }
+
+    @Test
+    public void testTakeEphemeralMessagesLimit() {
+        final long                         currentTime = System.currentTimeMillis();
+        final List<MessageProtos.Envelope> messages    = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            final MessageProtos.Envelope message = generateRandomMessage(UUID.randomUUID(), true, currentTime);
+
+            messages.add(message);
+            messagesCache.insertEphemeral(DESTINATION_UUID, DESTINATION_DEVICE_ID, message);
+        }
+
+        assertEquals(messages.subList(0, 3), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 3, currentTime));
+        assertEquals(messages.subList(3, 5), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 3, currentTime));
+        assertEquals(Collections.emptyList(), messagesCache.takeEphemeralMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID, 3, currentTime));
+    }
+
+    @Test
+    public void testInsertEphemeralSetsExpiration() {
+        messagesCache.insertEphemeral(DESTINATION_UUID, DESTINATION_DEVICE_ID, generateRandomMessage(UUID.randomUUID(), true));
+
+        final long ttl = getRedisCluster().withBinaryCluster(connection ->
+                connection.sync().ttl(MessagesCache.getEphemeralMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID)));
+
+        assertTrue(ttl > 0 && ttl <= 10);
     }
 }
@@ -37,7 +37,9 @@ import org.whispersystems.textsecuregcm.util.Util;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.Executors;
 
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -70,7 +72,7 @@ public class CertificateControllerTest {
                                                                    .addProvider(new PolymorphicAuthValueFactoryProvider.Binder<>(ImmutableSet.of(Account.class, DisabledPermittedAccount.class)))
                                                                    .setMapper(SystemMapper.getMapper())
                                                                    .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
-                                                                   .addResource(new CertificateController(certificateGenerator, serverZkAuthOperations, true))
+                                                                   .addResource(new CertificateController(certificateGenerator, serverZkAuthOperations, true, Executors.newFixedThreadPool(2)))
                                                                    .build();
 
   @Test
@@ -149,6 +151,27 @@ public class CertificateControllerTest {
     assertTrue(Arrays.equals(certificate.getIdentityKey().toByteArray(), Base64.decode(AuthHelper.VALID_IDENTITY)));
   }
 
+  @Test
+  public void testCertificateReused() throws Exception {
+    byte[] first  = getDeliveryCertificate(true);
+    byte[] second = getDeliveryCertificate(true);
+    byte[] noE164 = getDeliveryCertificate(false);
+
+    assertTrue(Arrays.equals(first, second));
+    assertFalse(Arrays.equals(first, noE164));
+    assertTrue(StringUtils.isBlank(SenderCertificate.Certificate.parseFrom(SenderCertificate.parseFrom(noE164).getCertificate()).getSender()));
+  }
+
+  private byte[] getDeliveryCertificate(boolean includeE164) {
+    return resources.getJerseyTest()
+                    .target("/v1/certificate/delivery")
+                    .queryParam("includeE164", String.valueOf(includeE164))
+                    .request()
+                    .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_NUMBER, AuthHelper.VALID_PASSWORD))
+                    .get(DeliveryCertificate.class)
+                    .getCertificate();
+  }
+
   @Test
   public void testBadAuthentication() throws Exception {
     Response response = resources.getJerseyTest()
@@ -227,6 +250,31 @@ public class CertificateControllerTest {
     }
   }
 
+  @Test
+  public void testAuthCredentialsReused() throws InvalidInputException, VerificationFailedException {
+    String           path   = "/v1/certificate/group/" + Util.currentDaysSinceEpoch() + "/" + (Util.currentDaysSinceEpoch() + 2);
+    GroupCredentials first  = resources.getJerseyTest()
+                                       .target(path)
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_NUMBER, AuthHelper.VALID_PASSWORD))
+                                       .get(GroupCredentials.class);
+    GroupCredentials second = resources.getJerseyTest()
+                                       .target(path)
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_NUMBER, AuthHelper.VALID_PASSWORD))
+                                       .get(GroupCredentials.class);
+
+    assertThat(second.getCredentials().size()).isEqualTo(3);
+
+    for (int i=0;i<=2;i++) {
+      assertThat(second.getCredentials().get(i).getRedemptionTime()).isEqualTo(Util.currentDaysSinceEpoch() + i);
+      assertThat(second.getCredentials().get(i).getCredential()).isEqualTo(first.getCredentials().get(i).getCredential());
+
+      ClientZkAuthOperations clientZkAuthOperations = new ClientZkAuthOperations(serverSecretParams.getPublicParams());
+      clientZkAuthOperations.receiveAuthCredential(AuthHelper.VALID_UUID, Util.currentDaysSinceEpoch() + i, new AuthCredentialResponse(second.getCredentials().get(i).getCredential()));
+    }
+  }
+
   @Test
   public void testTooManyDaysOut() throws InvalidInputException {
     Response response = resources.getJerseyTest()
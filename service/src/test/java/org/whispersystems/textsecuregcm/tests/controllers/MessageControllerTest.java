@@ -19,6 +19,7 @@ import org.whispersystems.textsecuregcm.auth.AmbiguousIdentifier;
 import org.whispersystems.textsecuregcm.auth.DisabledPermittedAccount;
 import org.whispersystems.textsecuregcm.auth.OptionalAccess;
 import org.whispersystems.textsecuregcm.controllers.MessageController;
+import org.whispersystems.textsecuregcm.entities.AcknowledgedMessageList;
 import org.whispersystems.textsecuregcm.entities.IncomingMessageList;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
 import org.whispersystems.textsecuregcm.entities.MismatchedDevices;
@@ -41,6 +42,8 @@ import org.whispersystems.textsecuregcm.util.Base64;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -297,6 +300,98 @@ public class MessageControllerTest {
     assertEquals(response.getMessages().get(1).getSourceUuid(), sourceUuid);
   }
 
+  @Test
+  public synchronized void testGetMessageBatch() throws Exception {
+    final UUID messageGuidOne = UUID.randomUUID();
+    final UUID messageGuidTwo = UUID.randomUUID();
+    final UUID sourceUuid     = UUID.randomUUID();
+
+    final List<OutgoingMessageEntity> messages = List.of(
+        new OutgoingMessageEntity(1L, false, messageGuidOne, Envelope.Type.CIPHERTEXT_VALUE, null, 313377, "+14152222222", sourceUuid, 2, null, "hi there".getBytes(), 0),
+        new OutgoingMessageEntity(2L, false, messageGuidTwo, Envelope.Type.CIPHERTEXT_VALUE, null, 313388, "+14152222222", sourceUuid, 2, null, "hello".getBytes(), 0));
+
+    when(messagesManager.getMessagesForDevice(eq(AuthHelper.VALID_NUMBER), eq(AuthHelper.VALID_UUID), eq(1L), anyString(), eq(false), eq(Optional.empty())))
+        .thenReturn(new OutgoingMessageEntityList(messages, true));
+
+    final Response response = resources.getJerseyTest().target("/v1/messages/batch")
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID.toString(), AuthHelper.VALID_PASSWORD))
+                                       .accept(MessageController.ENVELOPE_BATCH_MEDIA_TYPE)
+                                       .get();
+
+    assertThat("Good Response Code", response.getStatus(), is(equalTo(200)));
+    assertEquals("true", response.getHeaderString(MessageController.MORE_MESSAGES_HEADER));
+    assertEquals("313388:2", response.getHeaderString(MessageController.CURSOR_HEADER));
+
+    final InputStream batch    = new ByteArrayInputStream(response.readEntity(byte[].class));
+    final Envelope    envelope = Envelope.parseDelimitedFrom(batch);
+
+    assertEquals(messageGuidOne.toString(), envelope.getServerGuid());
+    assertEquals(sourceUuid.toString(), envelope.getSourceUuid());
+    assertEquals("hi there", envelope.getContent().toStringUtf8());
+
+    assertEquals(messageGuidTwo.toString(), Envelope.parseDelimitedFrom(batch).getServerGuid());
+    assertNull(Envelope.parseDelimitedFrom(batch));
+  }
+
+  @Test
+  public synchronized void testGetMessageBatchWithCursor() throws Exception {
+    final List<OutgoingMessageEntity> messages = List.of(
+        new OutgoingMessageEntity(3L, true, UUID.randomUUID(), Envelope.Type.CIPHERTEXT_VALUE, null, 313399, "+14152222222", UUID.randomUUID(), 2, null, "hi there".getBytes(), 0));
+
+    when(messagesManager.getMessagesForDevice(eq(AuthHelper.VALID_NUMBER), eq(AuthHelper.VALID_UUID), eq(1L), anyString(), eq(false),
+                                              argThat((ArgumentMatcher<Optional<OutgoingMessageEntity>>) cursor -> cursor != null && cursor.isPresent() && cursor.get().getTimestamp() == 313388 && cursor.get().getId() == 2)))
+        .thenReturn(new OutgoingMessageEntityList(messages, true));
+
+    final Response response = resources.getJerseyTest().target("/v1/messages/batch")
+                                       .queryParam("cursor", "313388:2")
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID.toString(), AuthHelper.VALID_PASSWORD))
+                                       .accept(MessageController.ENVELOPE_BATCH_MEDIA_TYPE)
+                                       .get();
+
+    assertThat("Good Response Code", response.getStatus(), is(equalTo(200)));
+    assertEquals("true", response.getHeaderString(MessageController.MORE_MESSAGES_HEADER));
+
+    // Cached messages can't be skipped by cursor, so the client has to acknowledge this batch before fetching more
+    assertNull(response.getHeaderString(MessageController.CURSOR_HEADER));
+  }
+
+  @Test
+  public synchronized void testGetMessageBatchBadCursor() throws Exception {
+    final Response response = resources.getJerseyTest().target("/v1/messages/batch")
+                                       .queryParam("cursor", "garbage")
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID.toString(), AuthHelper.VALID_PASSWORD))
+                                       .accept(MessageController.ENVELOPE_BATCH_MEDIA_TYPE)
+                                       .get();
+
+    assertThat("Bad Response Code", response.getStatus(), is(equalTo(400)));
+  }
+
+  @Test
+  public synchronized void testAcknowledgeMessages() throws Exception {
+    final UUID messageGuidOne = UUID.randomUUID();
+    final UUID messageGuidTwo = UUID.randomUUID();
+    final long timestamp      = System.currentTimeMillis();
+
+    when(messagesManager.deleteByGuids(AuthHelper.VALID_NUMBER, AuthHelper.VALID_UUID, 1, List.of(messageGuidOne, messageGuidTwo)))
+        .thenReturn(List.of(new OutgoingMessageEntity(1L, true, messageGuidOne, Envelope.Type.CIPHERTEXT_VALUE, null, timestamp, "+14152222222", UUID.randomUUID(), 1, null, "hi".getBytes(), 0),
+                            new OutgoingMessageEntity(2L, false, messageGuidTwo, Envelope.Type.RECEIPT_VALUE, null, timestamp, "+14152222222", UUID.randomUUID(), 1, null, null, 0)));
+
+    final Response response = resources.getJerseyTest()
+                                       .target("/v1/messages/acknowledged")
+                                       .request()
+                                       .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_NUMBER, AuthHelper.VALID_PASSWORD))
+                                       .put(Entity.entity(new AcknowledgedMessageList(List.of(messageGuidOne, messageGuidTwo)), MediaType.APPLICATION_JSON_TYPE));
+
+    assertThat("Good Response Code", response.getStatus(), is(equalTo(204)));
+
+    // Receipts aren't sent for receipts
+    verify(receiptSender).sendReceipt(any(Account.class), eq("+14152222222"), eq(timestamp));
+    verifyNoMoreInteractions(receiptSender);
+  }
+
   @Test
   public synchronized void testGetMessagesBadAuth() throws Exception {
     final long timestampOne = 313377;
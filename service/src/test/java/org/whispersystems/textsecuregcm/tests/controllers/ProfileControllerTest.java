@@ -21,6 +21,7 @@ import org.signal.zkgroup.profiles.ProfileKeyCommitment;
 import org.signal.zkgroup.profiles.ServerZkProfileOperations;
 import org.whispersystems.textsecuregcm.auth.AmbiguousIdentifier;
 import org.whispersystems.textsecuregcm.auth.DisabledPermittedAccount;
+import org.whispersystems.textsecuregcm.auth.OptionalAccess;
 import org.whispersystems.textsecuregcm.controllers.ProfileController;
 import org.whispersystems.textsecuregcm.controllers.RateLimitExceededException;
 import org.whispersystems.textsecuregcm.entities.CreateProfileRequest;
@@ -44,6 +45,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.mockito.Mockito.any;
@@ -51,6 +54,7 @@ import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -86,7 +90,8 @@ public class ProfileControllerTest {
                                                                                                       policySigner,
                                                                                                       "profilesBucket",
                                                                                                       zkProfileOperations,
-                                                                                                      true))
+                                                                                                      true,
+                                                                                                      Executors.newSingleThreadExecutor()))
                                                                    .build();
 
   @Before
@@ -205,6 +210,20 @@ public class ProfileControllerTest {
     assertThat(response.getStatus()).isEqualTo(401);
   }
 
+  @Test
+  public void testGetProfileByVersionUnidentifiedUnauthorized() {
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/profile/" + AuthHelper.VALID_UUID_TWO + "/validversion")
+                                 .request()
+                                 .header(OptionalAccess.UNIDENTIFIED, AuthHelper.getUnidentifiedAccessHeader("1337".getBytes()))
+                                 .get();
+
+    assertThat(response.getStatus()).isEqualTo(401);
+
+    verify(usernamesManager, never()).get(any(UUID.class));
+    verify(profilesManager, never()).get(any(UUID.class), any(String.class));
+  }
+
   @Test
   public void testProfileGetByUsernameUnauthorized() throws Exception {
     Response response = resources.getJerseyTest()
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.tests.entities;
+
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.entities.IncomingMessage;
+import org.whispersystems.textsecuregcm.entities.IncomingMessageList;
+import org.whispersystems.textsecuregcm.util.Base64;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.whispersystems.textsecuregcm.tests.util.JsonHelpers.fromJson;
+
+public class IncomingMessageTest {
+
+  @Test
+  public void testDeserializeContent() throws Exception {
+    final byte[] content = new byte[1024];
+    new Random().nextBytes(content);
+
+    final IncomingMessage message = fromJson("{\"type\": 1, \"content\": \"" + Base64.encodeBytes(content) + "\"}", IncomingMessage.class);
+
+    assertArrayEquals(content, message.getContent());
+    assertNull(message.getBody());
+  }
+
+  @Test
+  public void testDeserializeShortContent() throws Exception {
+    for (int length = 1; length <= 4; length++) {
+      final byte[] content = new byte[length];
+      new Random().nextBytes(content);
+
+      final IncomingMessage message = fromJson("{\"content\": \"" + Base64.encodeBytes(content) + "\"}", IncomingMessage.class);
+
+      assertArrayEquals(content, message.getContent());
+    }
+  }
+
+  @Test
+  public void testDeserializeEscapedContent() throws Exception {
+    final IncomingMessage message = fromJson("{\"body\": \"Zm9v\\u0059mFy\"}", IncomingMessage.class);
+
+    assertArrayEquals("foobar".getBytes(), message.getBody());
+  }
+
+  @Test
+  public void testDeserializeBadContent() throws Exception {
+    assertNull(fromJson("{\"content\": \"not base64!\"}", IncomingMessage.class).getContent());
+    assertNull(fromJson("{\"content\": \"ab\"}", IncomingMessage.class).getContent());
+    assertNull(fromJson("{\"content\": null}", IncomingMessage.class).getContent());
+    assertEquals(0, fromJson("{\"content\": \"\"}", IncomingMessage.class).getContent().length);
+  }
+
+  @Test
+  public void testDeserializeMultiDeviceList() throws Exception {
+    final int           deviceCount = 16;
+    final byte[][]      contents    = new byte[deviceCount][];
+    final StringBuilder json        = new StringBuilder("{\"timestamp\": 1234, \"messages\": [");
+
+    for (int i = 0; i < deviceCount; i++) {
+      contents[i] = new byte[64 * 1024];
+      new Random().nextBytes(contents[i]);
+
+      if (i > 0) json.append(", ");
+      json.append("{\"type\": 1, \"destinationDeviceId\": ").append(i + 1)
+          .append(", \"content\": \"").append(Base64.encodeBytes(contents[i])).append("\"}");
+    }
+
+    json.append("]}");
+
+    final IncomingMessageList messages = fromJson(json.toString(), IncomingMessageList.class);
+
+    assertEquals(deviceCount, messages.getMessages().size());
+
+    for (int i = 0; i < deviceCount; i++) {
+      assertEquals(i + 1, messages.getMessages().get(i).getDestinationDeviceId());
+      assertArrayEquals(contents[i], messages.getMessages().get(i).getContent());
+    }
+  }
+}
@@ -5,6 +5,7 @@
 
 package org.whispersystems.textsecuregcm.tests.storage;
 
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisException;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import org.junit.Test;
@@ -22,12 +23,16 @@ import org.whispersystems.textsecuregcm.storage.UsernamesManager;
 import org.whispersystems.textsecuregcm.tests.util.RedisClusterHelper;
 
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
@@ -226,5 +231,77 @@ public class AccountsManagerTest {
     verifyNoMoreInteractions(accounts);
   }
 
+  @Test
+  public void testUpdateAll() {
+    RedisAdvancedClusterCommands<String, String> commands         = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster                    cacheCluster     = RedisClusterHelper.buildMockRedisCluster(commands);
+    Accounts                                     accounts         = mock(Accounts.class);
+    DirectoryManager                             directoryManager = mock(DirectoryManager.class);
+    DirectoryQueue                               directoryQueue   = mock(DirectoryQueue.class);
+    Keys                                         keys             = mock(Keys.class);
+    MessagesManager                              messagesManager  = mock(MessagesManager.class);
+    UsernamesManager                             usernamesManager = mock(UsernamesManager.class);
+    ProfilesManager                              profilesManager  = mock(ProfilesManager.class);
+    UUID                                         firstUuid        = UUID.randomUUID();
+    UUID                                         secondUuid       = UUID.randomUUID();
+    Account                                      firstAccount     = new Account("+14152222222", firstUuid, new HashSet<>(), new byte[16]);
+    Account                                      secondAccount    = new Account("+14153333333", secondUuid, new HashSet<>(), new byte[16]);
+
+    AccountsManager accountsManager = new AccountsManager(accounts, directoryManager, cacheCluster, directoryQueue, keys, messagesManager, usernamesManager, profilesManager);
+    accountsManager.updateAll(List.of(firstAccount, secondAccount));
+
+    verify(commands, times(1)).mset(argThat(values -> values.size() == 4 &&
+                                                      firstUuid.toString().equals(values.get("AccountMap::+14152222222")) &&
+                                                      secondUuid.toString().equals(values.get("AccountMap::+14153333333")) &&
+                                                      values.containsKey("Account3::" + firstUuid) &&
+                                                      values.containsKey("Account3::" + secondUuid)));
+    verifyNoMoreInteractions(commands);
+
+    verify(accounts, times(1)).updateAll(eq(List.of(firstAccount, secondAccount)));
+    verifyNoMoreInteractions(accounts);
+
+    verify(directoryManager, times(1)).startBatchOperation();
+    verify(directoryManager, times(1)).remove(any(), eq("+14152222222"));
+    verify(directoryManager, times(1)).remove(any(), eq("+14153333333"));
+    verify(directoryManager, times(1)).stopBatchOperation(any());
+    verifyNoMoreInteractions(directoryManager);
+  }
+
+  @Test
+  public void testGetAllPartiallyCached() {
+    RedisAdvancedClusterCommands<String, String> commands         = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster                    cacheCluster     = RedisClusterHelper.buildMockRedisCluster(commands);
+    Accounts                                     accounts         = mock(Accounts.class);
+    DirectoryManager                             directoryManager = mock(DirectoryManager.class);
+    DirectoryQueue                               directoryQueue   = mock(DirectoryQueue.class);
+    Keys                                         keys             = mock(Keys.class);
+    MessagesManager                              messagesManager  = mock(MessagesManager.class);
+    UsernamesManager                             usernamesManager = mock(UsernamesManager.class);
+    ProfilesManager                              profilesManager  = mock(ProfilesManager.class);
+    UUID                                         cachedUuid       = UUID.randomUUID();
+    UUID                                         uncachedUuid     = UUID.randomUUID();
+    UUID                                         missingUuid      = UUID.randomUUID();
+    Account                                      uncachedAccount  = new Account("+14153333333", uncachedUuid, new HashSet<>(), new byte[16]);
+
+    when(commands.mget(any())).thenReturn(List.of(KeyValue.just("Account3::" + cachedUuid, "{\"number\": \"+14152222222\", \"name\": \"test\"}"),
+                                                                KeyValue.empty("Account3::" + uncachedUuid),
+                                                                KeyValue.empty("Account3::" + missingUuid)));
+    when(accounts.getAll(any())).thenReturn(List.of(uncachedAccount));
+
+    AccountsManager    accountsManager = new AccountsManager(accounts, directoryManager, cacheCluster, directoryQueue, keys, messagesManager, usernamesManager, profilesManager);
+    Map<UUID, Account> retrieved       = accountsManager.getAll(List.of(cachedUuid, uncachedUuid, missingUuid));
+
+    assertEquals(2, retrieved.size());
+    assertEquals("+14152222222", retrieved.get(cachedUuid).getNumber());
+    assertEquals(cachedUuid, retrieved.get(cachedUuid).getUuid());
+    assertSame(uncachedAccount, retrieved.get(uncachedUuid));
+
+    verify(commands, times(1)).mget(any());
+    verify(commands, times(1)).mset(argThat(values -> values.size() == 2 && uncachedUuid.toString().equals(values.get("AccountMap::+14153333333"))));
+    verifyNoMoreInteractions(commands);
+
+    verify(accounts, times(1)).getAll(argThat(uuids -> uuids.size() == 2 && uuids.containsAll(List.of(uncachedUuid, missingUuid))));
+    verifyNoMoreInteractions(accounts);
+  }
 
 }
@@ -33,10 +33,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -164,6 +167,50 @@ public class AccountsTest {
     verifyStoredState("+14151112222", account.getUuid(), retrieved.get(), account);
   }
 
+  @Test
+  public void testUpdateAll() {
+    Device  firstDevice   = generateDevice (1                                                 );
+    Device  secondDevice  = generateDevice (1                                                 );
+    Account firstAccount  = generateAccount("+14151112222", UUID.randomUUID(), Collections.singleton(firstDevice));
+    Account secondAccount = generateAccount("+14151113333", UUID.randomUUID(), Collections.singleton(secondDevice));
+
+    accounts.create(firstAccount);
+    accounts.create(secondAccount);
+
+    firstDevice.setName("foo");
+    secondDevice.setName("bar");
+
+    accounts.updateAll(List.of(firstAccount, secondAccount));
+
+    Optional<Account> retrieved = accounts.get(firstAccount.getUuid());
+
+    assertThat(retrieved.isPresent()).isTrue();
+    verifyStoredState("+14151112222", firstAccount.getUuid(), retrieved.get(), firstAccount);
+
+    retrieved = accounts.get(secondAccount.getUuid());
+
+    assertThat(retrieved.isPresent()).isTrue();
+    verifyStoredState("+14151113333", secondAccount.getUuid(), retrieved.get(), secondAccount);
+  }
+
+  @Test
+  public void testGetAll() {
+    Account firstAccount  = generateAccount("+14151112222", UUID.randomUUID());
+    Account secondAccount = generateAccount("+14151113333", UUID.randomUUID());
+
+    accounts.create(firstAccount);
+    accounts.create(secondAccount);
+    accounts.create(generateAccount("+14151114444", UUID.randomUUID()));
+
+    Map<UUID, Account> retrieved = accounts.getAll(List.of(firstAccount.getUuid(), secondAccount.getUuid(), UUID.randomUUID()))
+                                           .stream()
+                                           .collect(Collectors.toMap(Account::getUuid, Function.identity()));
+
+    assertThat(retrieved.size()).isEqualTo(2);
+    verifyStoredState("+14151112222", firstAccount.getUuid(), retrieved.get(firstAccount.getUuid()), firstAccount);
+    verifyStoredState("+14151113333", secondAccount.getUuid(), retrieved.get(secondAccount.getUuid()), secondAccount);
+  }
+
   @Test
   public void testRetrieveFrom() {
     List<Account> users = new ArrayList<>();
@@ -168,6 +168,26 @@ public class MessagesTest {
 
   }
 
+  @Test
+  public void testLoadAfter() {
+    List<Envelope> inserted = insertRandom("+14151112222", 1);
+
+    inserted.sort(Comparator.comparingLong(Envelope::getTimestamp));
+
+    List<OutgoingMessageEntity> firstPage = messages.load("+14151112222", 1);
+    OutgoingMessageEntity       cursor    = firstPage.get(19);
+    List<OutgoingMessageEntity> retrieved = messages.load("+14151112222", 1, cursor.getTimestamp(), cursor.getId());
+
+    assertThat(retrieved.size()).isEqualTo(inserted.size() - 20);
+
+    for (int i=0;i<retrieved.size();i++) {
+      verifyExpected(retrieved.get(i), inserted.get(i + 20), UUID.fromString(inserted.get(i + 20).getServerGuid()));
+    }
+
+    OutgoingMessageEntity last = firstPage.get(firstPage.size() - 1);
+    assertThat(messages.load("+14151112222", 1, last.getTimestamp(), last.getId()).isEmpty()).isTrue();
+  }
+
   @Test
   public void removeBySourceDestinationTimestamp() {
     List<Envelope>                  inserted  = insertRandom("+14151112222", 1);
@@ -196,6 +216,47 @@ public class MessagesTest {
     verifyInTact(unrelated, "+14151113333", 2);
   }
 
+  @Test
+  public void removeByDestinationGuids() {
+    List<Envelope> unrelated = insertRandom("+14151113333", 1);
+    List<Envelope> inserted  = insertRandom("+14151112222", 1);
+    List<Envelope> toRemove  = new ArrayList<>(inserted.subList(0, 10));
+
+    inserted.removeAll(toRemove);
+
+    // Messages for other destinations with matching GUIDs should be left alone
+    messages.remove("+14151112222", toRemove.stream().map(envelope -> UUID.fromString(envelope.getServerGuid())).collect(Collectors.toList()));
+    messages.remove("+14151112222", unrelated.stream().map(envelope -> UUID.fromString(envelope.getServerGuid())).collect(Collectors.toList()));
+
+    verifyInTact(inserted, "+14151112222", 1);
+    verifyInTact(unrelated, "+14151113333", 1);
+  }
+
+  @Test
+  public void removeAndGetByDestinationGuids() {
+    List<Envelope> unrelated = insertRandom("+14151113333", 1);
+    List<Envelope> inserted  = insertRandom("+14151112222", 1);
+    List<Envelope> toRemove  = new ArrayList<>(inserted.subList(0, 10));
+
+    inserted.removeAll(toRemove);
+
+    List<OutgoingMessageEntity> removed = messages.removeAndGet("+14151112222", toRemove.stream().map(envelope -> UUID.fromString(envelope.getServerGuid())).collect(Collectors.toList()));
+
+    assertThat(removed.size()).isEqualTo(toRemove.size());
+
+    for (Envelope envelope : toRemove) {
+      UUID                  guid   = UUID.fromString(envelope.getServerGuid());
+      OutgoingMessageEntity entity = removed.stream().filter(message -> guid.equals(message.getGuid())).findFirst().orElseThrow();
+
+      verifyExpected(entity, envelope, guid);
+    }
+
+    assertThat(messages.removeAndGet("+14151112222", unrelated.stream().map(envelope -> UUID.fromString(envelope.getServerGuid())).collect(Collectors.toList())).isEmpty()).isTrue();
+
+    verifyInTact(inserted, "+14151112222", 1);
+    verifyInTact(unrelated, "+14151113333", 1);
+  }
+
   @Test
   public void removeByDestinationRowId() {
     List<Envelope> unrelatedInserted = insertRandom("+14151111111", 1);
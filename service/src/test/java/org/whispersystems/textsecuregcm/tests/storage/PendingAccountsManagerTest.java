@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.tests.storage;
+
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.auth.StoredVerificationCode;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.storage.PendingAccounts;
+import org.whispersystems.textsecuregcm.storage.PendingAccountsManager;
+import org.whispersystems.textsecuregcm.tests.util.RedisClusterHelper;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PendingAccountsManagerTest {
+
+  private static final String NUMBER    = "+14151231234";
+  private static final String CACHE_KEY = "pending_account2::" + NUMBER;
+
+  private RedisAdvancedClusterCommands<String, String> commands;
+  private PendingAccounts                              pendingAccounts;
+  private PendingAccountsManager                       pendingAccountsManager;
+
+  @Before
+  public void setup() {
+    commands        = mock(RedisAdvancedClusterCommands.class);
+    pendingAccounts = mock(PendingAccounts.class);
+
+    FaultTolerantRedisCluster cacheCluster = RedisClusterHelper.buildMockRedisCluster(commands);
+
+    pendingAccountsManager = new PendingAccountsManager(pendingAccounts, cacheCluster);
+  }
+
+  @Test
+  public void testStore() {
+    pendingAccountsManager.store(NUMBER, new StoredVerificationCode("123456", 1234L, "abcdef"));
+
+    verify(commands).set(CACHE_KEY, "1234:123456:abcdef");
+    verify(pendingAccounts).insert(NUMBER, "123456", 1234L, "abcdef");
+  }
+
+  @Test
+  public void testGetCached() {
+    when(commands.get(CACHE_KEY)).thenReturn("1234:123456:");
+
+    Optional<StoredVerificationCode> code = pendingAccountsManager.getCodeForNumber(NUMBER);
+
+    assertTrue(code.isPresent());
+    assertEquals("123456", code.get().getCode());
+    assertEquals(1234L, code.get().getTimestamp());
+    assertNull(code.get().getPushCode());
+
+    verify(commands).get(CACHE_KEY);
+    verifyNoMoreInteractions(commands);
+    verifyZeroInteractions(pendingAccounts);
+  }
+
+  @Test
+  public void testGetCachedLegacyJson() {
+    when(commands.get(CACHE_KEY)).thenReturn("{\"code\": \"123456\", \"timestamp\": 1234, \"pushCode\": \"abcdef\"}");
+
+    Optional<StoredVerificationCode> code = pendingAccountsManager.getCodeForNumber(NUMBER);
+
+    assertTrue(code.isPresent());
+    assertEquals("123456", code.get().getCode());
+    assertEquals(1234L, code.get().getTimestamp());
+    assertEquals("abcdef", code.get().getPushCode());
+
+    verifyZeroInteractions(pendingAccounts);
+  }
+
+  @Test
+  public void testGetNotCached() {
+    when(pendingAccounts.getCodeForNumber(NUMBER)).thenReturn(Optional.of(new StoredVerificationCode("123456", 1234L, null)));
+
+    Optional<StoredVerificationCode> code = pendingAccountsManager.getCodeForNumber(NUMBER);
+
+    assertTrue(code.isPresent());
+    assertEquals("123456", code.get().getCode());
+
+    verify(pendingAccounts).getCodeForNumber(NUMBER);
+    verify(commands).set(CACHE_KEY, "1234:123456:");
+  }
+
+  @Test
+  public void testGetAbsent() {
+    when(pendingAccounts.getCodeForNumber(NUMBER)).thenReturn(Optional.empty());
+
+    assertFalse(pendingAccountsManager.getCodeForNumber(NUMBER).isPresent());
+
+    verify(pendingAccounts).getCodeForNumber(NUMBER);
+    verify(commands).set(eq(CACHE_KEY), eq("-"), any(SetArgs.class));
+    verify(commands, never()).set(CACHE_KEY, "-");
+  }
+
+  @Test
+  public void testGetNegativelyCached() {
+    when(commands.get(CACHE_KEY)).thenReturn("-");
+
+    assertFalse(pendingAccountsManager.getCodeForNumber(NUMBER).isPresent());
+
+    verify(commands).get(CACHE_KEY);
+    verifyNoMoreInteractions(commands);
+    verifyZeroInteractions(pendingAccounts);
+  }
+
+  @Test
+  public void testGetMalformed() {
+    when(commands.get(CACHE_KEY)).thenReturn("garbage");
+    when(pendingAccounts.getCodeForNumber(NUMBER)).thenReturn(Optional.of(new StoredVerificationCode("123456", 1234L, "abcdef")));
+
+    Optional<StoredVerificationCode> code = pendingAccountsManager.getCodeForNumber(NUMBER);
+
+    assertTrue(code.isPresent());
+    assertEquals("abcdef", code.get().getPushCode());
+
+    verify(commands).set(CACHE_KEY, "1234:123456:abcdef");
+  }
+}
@@ -106,4 +106,32 @@ public class ProfilesManagerTest {
     verify(profiles, times(1)).get(eq(uuid), eq("someversion"));
     verifyNoMoreInteractions(profiles);
   }
+
+  @Test
+  public void testGetProfileLocallyCached() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Profiles            profiles                          = mock(Profiles.class);
+
+    UUID             uuid    = UUID.randomUUID();
+    VersionedProfile profile = new VersionedProfile("someversion", "somename", "someavatar", "somecommitment".getBytes());
+
+    when(profiles.get(eq(uuid), eq("someversion"))).thenReturn(Optional.of(profile));
+
+    ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
+
+    assertSame(profilesManager.get(uuid, "someversion").get(), profile);
+    assertSame(profilesManager.get(uuid, "someversion").get(), profile);
+
+    verify(commands, times(1)).hget(eq("profiles::" + uuid.toString()), eq("someversion"));
+    verify(profiles, times(1)).get(eq(uuid), eq("someversion"));
+
+    VersionedProfile updated = new VersionedProfile("someversion", "othername", "someavatar", "somecommitment".getBytes());
+
+    profilesManager.set(uuid, updated);
+    when(profiles.get(eq(uuid), eq("someversion"))).thenReturn(Optional.of(updated));
+
+    assertSame(profilesManager.get(uuid, "someversion").get(), updated);
+    verify(profiles, times(2)).get(eq(uuid), eq("someversion"));
+  }
 }
@@ -100,8 +100,6 @@ public class PushFeedbackProcessorTest {
     verify(uninstalledDevice).setGcmId(isNull());
     verify(uninstalledDevice).setFetchesMessages(eq(false));
 
-    verify(accountsManager).update(eq(uninstalledAccount));
-
     verify(uninstalledDeviceTwo).setApnId(isNull());
     verify(uninstalledDeviceTwo).setGcmId(isNull());
     verify(uninstalledDeviceTwo).setFetchesMessages(eq(false));
@@ -110,29 +108,26 @@ public class PushFeedbackProcessorTest {
     verify(installedDevice, never()).setGcmId(any());
     verify(installedDevice, never()).setFetchesMessages(anyBoolean());
 
-    verify(accountsManager).update(eq(mixedAccount));
-
     verify(recentUninstalledDevice, never()).setApnId(any());
     verify(recentUninstalledDevice, never()).setGcmId(any());
     verify(recentUninstalledDevice, never()).setFetchesMessages(anyBoolean());
 
-    verify(accountsManager, never()).update(eq(freshAccount));
-
     verify(installedDeviceTwo, never()).setApnId(any());
     verify(installedDeviceTwo, never()).setGcmId(any());
     verify(installedDeviceTwo, never()).setFetchesMessages(anyBoolean());
 
-    verify(accountsManager, never()).update(eq(cleanAccount));
-
     verify(stillActiveDevice).setUninstalledFeedbackTimestamp(eq(0L));
     verify(stillActiveDevice, never()).setApnId(any());
     verify(stillActiveDevice, never()).setGcmId(any());
     verify(stillActiveDevice, never()).setFetchesMessages(anyBoolean());
 
-    verify(accountsManager).update(eq(stillActiveAccount));
+    final List<Account> expectedUpdatedAccounts = List.of(uninstalledAccount, mixedAccount, stillActiveAccount, undiscoverableAccount);
+
+    verify(accountsManager).updateAll(eq(expectedUpdatedAccounts));
+    verify(accountsManager, never()).update(any());
 
-    verify(directoryQueue).refreshRegisteredUser(undiscoverableAccount);
-    verify(directoryQueue).refreshRegisteredUser(uninstalledAccount);
+    verify(directoryQueue).refreshRegisteredUsers(eq(expectedUpdatedAccounts));
+    verify(directoryQueue, never()).refreshRegisteredUser(any());
   }
 
 
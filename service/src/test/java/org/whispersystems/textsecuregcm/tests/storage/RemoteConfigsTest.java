@@ -116,4 +116,27 @@ public class RemoteConfigsTest {
     assertThat(configs.get(1).getValue()).isEqualTo("always");
     assertThat(configs.get(1).getDefaultValue()).isEqualTo("never");
   }
+
+  @Test
+  public void testChecksum() {
+    assertThat(remoteConfigs.getChecksum()).isNull();
+
+    remoteConfigs.set(new RemoteConfig("android.stickers", 50, Set.of(), "FALSE", "TRUE", null));
+    remoteConfigs.set(new RemoteConfig("ios.stickers", 50, Set.of(), "FALSE", "TRUE", null));
+
+    String initial = remoteConfigs.getChecksum();
+
+    assertThat(initial).isNotNull();
+    assertThat(remoteConfigs.getChecksum()).isEqualTo(initial);
+
+    remoteConfigs.set(new RemoteConfig("ios.stickers", 75, Set.of(), "FALSE", "TRUE", null));
+
+    String updated = remoteConfigs.getChecksum();
+
+    assertThat(updated).isNotEqualTo(initial);
+
+    remoteConfigs.delete("android.stickers");
+
+    assertThat(remoteConfigs.getChecksum()).isNotEqualTo(updated);
+  }
 }
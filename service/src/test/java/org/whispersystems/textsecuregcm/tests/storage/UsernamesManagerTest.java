@@ -6,6 +6,7 @@
 package org.whispersystems.textsecuregcm.tests.storage;
 
 import io.lettuce.core.RedisException;
+import io.lettuce.core.SetArgs;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import org.junit.Test;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
@@ -20,6 +21,8 @@ import java.util.UUID;
 import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -93,9 +96,11 @@ public class UsernamesManagerTest {
     assertSame(retrieved.get(), uuid);
 
     verify(commands, times(1)).get(eq("UsernameByUsername::n00bkiller"));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUsername::n00bkiller"));
     verify(commands, times(1)).set(eq("UsernameByUsername::n00bkiller"), eq(uuid.toString()));
     verify(commands, times(1)).set(eq("UsernameByUuid::" + uuid.toString()), eq("n00bkiller"));
     verify(commands, times(1)).get(eq("UsernameByUuid::" + uuid.toString()));
+    verify(commands, times(1)).del(eq("Absent::UsernameByUuid::" + uuid.toString()), eq("Absent::UsernameByUsername::n00bkiller"));
     verifyNoMoreInteractions(commands);
 
     verify(usernames, times(1)).get(eq("n00bkiller"));
@@ -121,8 +126,10 @@ public class UsernamesManagerTest {
     assertEquals(retrieved.get(), "n00bkiller");
 
     verify(commands, times(2)).get(eq("UsernameByUuid::" + uuid));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUuid::" + uuid));
     verify(commands, times(1)).set(eq("UsernameByUuid::" + uuid), eq("n00bkiller"));
     verify(commands, times(1)).set(eq("UsernameByUsername::n00bkiller"), eq(uuid.toString()));
+    verify(commands, times(1)).del(eq("Absent::UsernameByUuid::" + uuid), eq("Absent::UsernameByUsername::n00bkiller"));
     verifyNoMoreInteractions(commands);
 
     verify(usernames, times(1)).get(eq(uuid));
@@ -148,9 +155,11 @@ public class UsernamesManagerTest {
     assertEquals(retrieved.get(), uuid);
 
     verify(commands, times(1)).get(eq("UsernameByUsername::n00bkiller"));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUsername::n00bkiller"));
     verify(commands, times(1)).set(eq("UsernameByUsername::n00bkiller"), eq(uuid.toString()));
     verify(commands, times(1)).set(eq("UsernameByUuid::" + uuid.toString()), eq("n00bkiller"));
     verify(commands, times(1)).get(eq("UsernameByUuid::" + uuid.toString()));
+    verify(commands, times(1)).del(eq("Absent::UsernameByUuid::" + uuid.toString()), eq("Absent::UsernameByUsername::n00bkiller"));
     verifyNoMoreInteractions(commands);
 
     verify(usernames, times(1)).get(eq("n00bkiller"));
@@ -176,10 +185,140 @@ public class UsernamesManagerTest {
     assertEquals(retrieved.get(), "n00bkiller");
 
     verify(commands, times(2)).get(eq("UsernameByUuid::" + uuid));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUuid::" + uuid));
     verifyNoMoreInteractions(commands);
 
     verify(usernames, times(1)).get(eq(uuid));
     verifyNoMoreInteractions(usernames);
   }
 
+  @Test
+  public void testGetByUsernameAbsent() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    when(usernames.get(eq("n00bkiller"))).thenReturn(Optional.empty());
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+
+    assertFalse(usernamesManager.get("n00bkiller").isPresent());
+
+    verify(commands, times(1)).get(eq("UsernameByUsername::n00bkiller"));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUsername::n00bkiller"));
+    verify(commands, times(1)).set(eq("Absent::UsernameByUsername::n00bkiller"), eq(""), any(SetArgs.class));
+    verifyNoMoreInteractions(commands);
+
+    verify(usernames, times(1)).get(eq("n00bkiller"));
+    verifyNoMoreInteractions(usernames);
+  }
+
+  @Test
+  public void testGetByUuidNegativelyCached() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    UUID uuid = UUID.randomUUID();
+
+    when(commands.get(eq("Absent::UsernameByUuid::" + uuid))).thenReturn("");
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+
+    assertFalse(usernamesManager.get(uuid).isPresent());
+
+    verify(commands, times(1)).get(eq("UsernameByUuid::" + uuid));
+    verify(commands, times(1)).get(eq("Absent::UsernameByUuid::" + uuid));
+    verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(usernames);
+  }
+
+  @Test
+  public void testGetLocallyCached() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    UUID uuid = UUID.randomUUID();
+
+    when(commands.get(eq("UsernameByUuid::" + uuid))).thenReturn("n00bkiller");
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+
+    assertEquals(Optional.of("n00bkiller"), usernamesManager.get(uuid));
+    assertEquals(Optional.of("n00bkiller"), usernamesManager.get(uuid));
+
+    verify(commands, times(1)).get(eq("UsernameByUuid::" + uuid));
+    verifyNoMoreInteractions(commands);
+  }
+
+  @Test
+  public void testPutInvalidatesLocalCache() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    UUID uuid = UUID.randomUUID();
+
+    when(usernames.get(eq("n00bkiller"))).thenReturn(Optional.empty());
+    when(usernames.put(eq(uuid), eq("n00bkiller"))).thenReturn(true);
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+
+    assertFalse(usernamesManager.get("n00bkiller").isPresent());
+    assertTrue(usernamesManager.put(uuid, "n00bkiller"));
+
+    when(commands.get(eq("UsernameByUsername::n00bkiller"))).thenReturn(uuid.toString());
+
+    assertEquals(Optional.of(uuid), usernamesManager.get("n00bkiller"));
+  }
+
+  @Test
+  public void testDelete() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    UUID uuid = UUID.randomUUID();
+
+    when(commands.get(eq("UsernameByUuid::" + uuid))).thenReturn("n00bkiller");
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+    usernamesManager.delete(uuid);
+
+    verify(commands, times(1)).del(eq("UsernameByUsername::n00bkiller"));
+    verify(commands, times(1)).del(eq("UsernameByUuid::" + uuid));
+    verify(usernames, times(1)).delete(eq(uuid));
+  }
+
+  @Test
+  public void testDeleteInvalidatesLocalCache() {
+    RedisAdvancedClusterCommands<String, String> commands = mock(RedisAdvancedClusterCommands.class);
+    FaultTolerantRedisCluster cacheCluster                = RedisClusterHelper.buildMockRedisCluster(commands);
+    Usernames                 usernames                   = mock(Usernames.class);
+    ReservedUsernames         reserved                    = mock(ReservedUsernames.class);
+
+    UUID uuid = UUID.randomUUID();
+
+    when(commands.get(eq("UsernameByUsername::n00bkiller"))).thenReturn(uuid.toString());
+    when(commands.get(eq("UsernameByUuid::" + uuid))).thenReturn("n00bkiller");
+
+    UsernamesManager usernamesManager = new UsernamesManager(usernames, reserved, cacheCluster);
+
+    // Only the username -> UUID mapping is cached locally
+    assertEquals(Optional.of(uuid), usernamesManager.get("n00bkiller"));
+
+    usernamesManager.delete(uuid);
+
+    when(commands.get(eq("UsernameByUsername::n00bkiller"))).thenReturn(null);
+    when(usernames.get(eq("n00bkiller"))).thenReturn(Optional.empty());
+
+    assertFalse(usernamesManager.get("n00bkiller").isPresent());
+  }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
+
+import java.time.Clock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectAdmissionControllerTest {
+
+  private ScheduledExecutorService   executorService;
+  private Clock                      clock;
+  private ConnectAdmissionController connectAdmissionController;
+
+  @Before
+  public void setUp() {
+    final MessageDeliveryConfiguration configuration = mock(MessageDeliveryConfiguration.class);
+
+    when(configuration.getImmediateDrainsPerSecond()).thenReturn(2);
+    when(configuration.getMaxDrainJitterMillis()).thenReturn(0L);
+    when(configuration.getMaxDrainDelayMillis()).thenReturn(2_000L);
+
+    executorService = mock(ScheduledExecutorService.class);
+    clock           = mock(Clock.class);
+
+    when(clock.millis()).thenReturn(10_000L);
+
+    connectAdmissionController = new ConnectAdmissionController(configuration, executorService, clock);
+  }
+
+  @Test
+  public void testImmediateDrainsWithinBurst() {
+    final AtomicInteger drains                = new AtomicInteger(0);
+    final int           initialDeferredDrains = connectAdmissionController.getDeferredDrainCount();
+
+    for (int i = 0; i < 3; i++) {
+      connectAdmissionController.admitStoredMessageDrain(drains::incrementAndGet);
+    }
+
+    assertEquals(3, drains.get());
+    assertEquals(initialDeferredDrains, connectAdmissionController.getDeferredDrainCount());
+    verify(executorService, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void testDrainsDeferredBeyondBurst() {
+    final AtomicInteger drains                = new AtomicInteger(0);
+    final int           initialDeferredDrains = connectAdmissionController.getDeferredDrainCount();
+
+    for (int i = 0; i < 5; i++) {
+      connectAdmissionController.admitStoredMessageDrain(drains::incrementAndGet);
+    }
+
+    assertEquals(3, drains.get());
+    assertEquals(initialDeferredDrains + 2, connectAdmissionController.getDeferredDrainCount());
+    verify(executorService).schedule(any(Runnable.class), eq(500L), eq(TimeUnit.MILLISECONDS));
+    verify(executorService).schedule(any(Runnable.class), eq(1_000L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testDeferredDrainsBounded() {
+    for (int i = 0; i < 100; i++) {
+      connectAdmissionController.admitStoredMessageDrain(() -> {});
+    }
+
+    verify(executorService, times(97)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    verify(executorService, never()).schedule(any(Runnable.class), eq(2_500L), any(TimeUnit.class));
+
+    // Once the storm has passed, new drains start immediately again
+    when(clock.millis()).thenReturn(20_000L);
+
+    final AtomicInteger drains = new AtomicInteger(0);
+    connectAdmissionController.admitStoredMessageDrain(drains::incrementAndGet);
+
+    assertEquals(1, drains.get());
+  }
+}
@@ -85,6 +85,7 @@ public class WebSocketConnectionIntegrationTest extends AbstractRedisClusterTest
         account = mock(Account.class);
         device = mock(Device.class);
         webSocketClient = mock(WebSocketClient.class);
+        when(webSocketClient.whenWritable()).thenReturn(CompletableFuture.completedFuture(null));
 
         when(account.getNumber()).thenReturn("+18005551234");
         when(account.getUuid()).thenReturn(UUID.randomUUID());
@@ -16,6 +16,7 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.textsecuregcm.auth.AccountAuthenticator;
+import org.whispersystems.textsecuregcm.configuration.MessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.entities.OutgoingMessageEntity;
 import org.whispersystems.textsecuregcm.entities.OutgoingMessageEntityList;
 import org.whispersystems.textsecuregcm.push.ApnFallbackManager;
@@ -57,6 +58,7 @@ import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -93,7 +95,7 @@ public class WebSocketConnectionTest {
   public void testCredentials() throws Exception {
     MessagesManager               storedMessages         = mock(MessagesManager.class);
     WebSocketAccountAuthenticator webSocketAuthenticator = new WebSocketAccountAuthenticator(accountAuthenticator);
-    AuthenticatedConnectListener  connectListener        = new AuthenticatedConnectListener(receiptSender, storedMessages, mock(MessageSender.class), apnFallbackManager, mock(ClientPresenceManager.class));
+    AuthenticatedConnectListener  connectListener        = new AuthenticatedConnectListener(receiptSender, storedMessages, mock(MessageSender.class), apnFallbackManager, mock(ClientPresenceManager.class), new MessageDeliveryConfiguration(), mock(ConnectAdmissionController.class));
     WebSocketSessionContext       sessionContext         = mock(WebSocketSessionContext.class);
 
     when(accountAuthenticator.authenticate(eq(new BasicCredentials(VALID_USER, VALID_PASSWORD))))
@@ -163,11 +165,11 @@ public class WebSocketConnectionTest {
 
     String userAgent = "user-agent";
 
-    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false))
+    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false, Optional.empty()))
         .thenReturn(outgoingMessagesList);
 
     final List<CompletableFuture<WebSocketResponseMessage>> futures = new LinkedList<>();
-    final WebSocketClient                                   client  = mock(WebSocketClient.class);
+    final WebSocketClient                                   client  = mockWebSocketClient();
 
     when(client.getUserAgent()).thenReturn(userAgent);
     when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), ArgumentMatchers.nullable(List.class), ArgumentMatchers.<Optional<byte[]>>any()))
@@ -195,7 +197,7 @@ public class WebSocketConnectionTest {
     futures.get(0).completeExceptionally(new IOException());
     futures.get(2).completeExceptionally(new IOException());
 
-    verify(storedMessages, times(1)).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), eq(2L), eq(false));
+    verify(storedMessages, times(1)).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), eq(List.of(outgoingMessages.get(1))));
     verify(receiptSender, times(1)).sendReceipt(eq(account), eq("sender1"), eq(2222L));
 
     connection.stop();
@@ -205,7 +207,7 @@ public class WebSocketConnectionTest {
   @Test(timeout = 5_000L)
   public void testOnlineSend() throws Exception {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     final UUID accountUuid = UUID.randomUUID();
@@ -215,7 +217,7 @@ public class WebSocketConnectionTest {
     when(device.getId()).thenReturn(1L);
     when(client.getUserAgent()).thenReturn("Test-UA");
 
-    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean()))
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
             .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false))
             .thenReturn(new OutgoingMessageEntityList(List.of(createMessage(1L, false, "sender1", UUID.randomUUID(), 1111, false, "first")), false))
             .thenReturn(new OutgoingMessageEntityList(List.of(createMessage(2L, false, "sender1", UUID.randomUUID(), 2222, false, "second")), false));
@@ -316,11 +318,11 @@ public class WebSocketConnectionTest {
 
     String userAgent = "user-agent";
 
-    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false))
+    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false, Optional.empty()))
         .thenReturn(pendingMessagesList);
 
     final List<CompletableFuture<WebSocketResponseMessage>> futures = new LinkedList<>();
-    final WebSocketClient                                   client  = mock(WebSocketClient.class);
+    final WebSocketClient                                   client  = mockWebSocketClient();
 
     when(client.getUserAgent()).thenReturn(userAgent);
     when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), ArgumentMatchers.nullable(List.class), ArgumentMatchers.<Optional<byte[]>>any()))
@@ -356,7 +358,7 @@ public class WebSocketConnectionTest {
   @Test(timeout = 5000L)
   public void testProcessStoredMessageConcurrency() throws InterruptedException {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     when(account.getNumber()).thenReturn("+18005551234");
@@ -367,7 +369,7 @@ public class WebSocketConnectionTest {
     final AtomicBoolean threadWaiting     = new AtomicBoolean(false);
     final AtomicBoolean returnMessageList = new AtomicBoolean(false);
 
-    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false)).thenAnswer((Answer<OutgoingMessageEntityList>)invocation -> {
+    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false, Optional.empty())).thenAnswer((Answer<OutgoingMessageEntityList>)invocation -> {
       synchronized (threadWaiting) {
         threadWaiting.set(true);
         threadWaiting.notifyAll();
@@ -411,13 +413,13 @@ public class WebSocketConnectionTest {
       thread.join();
     }
 
-    verify(messagesManager).getMessagesForDevice(anyString(), any(UUID.class), anyLong(), anyString(), eq(false));
+    verify(messagesManager).getMessagesForDevice(anyString(), any(UUID.class), anyLong(), anyString(), eq(false), any());
   }
 
   @Test(timeout = 5000L)
   public void testProcessStoredMessagesMultiplePages() throws InterruptedException {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     when(account.getNumber()).thenReturn("+18005551234");
@@ -435,8 +437,10 @@ public class WebSocketConnectionTest {
     final OutgoingMessageEntityList firstPage  = new OutgoingMessageEntityList(firstPageMessages, true);
     final OutgoingMessageEntityList secondPage = new OutgoingMessageEntityList(secondPageMessages, false);
 
-    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false))
-            .thenReturn(firstPage)
+    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false, Optional.empty()))
+            .thenReturn(firstPage);
+
+    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false, Optional.of(firstPageMessages.get(1))))
             .thenReturn(secondPage);
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -460,7 +464,7 @@ public class WebSocketConnectionTest {
   @Test(timeout = 5000L)
   public void testProcessStoredMessagesContainsSenderUuid() throws InterruptedException {
     final MessagesManager messagesManager = mock(MessagesManager.class);
-    final WebSocketClient client = mock(WebSocketClient.class);
+    final WebSocketClient client = mockWebSocketClient();
     final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     when(account.getNumber()).thenReturn("+18005551234");
@@ -472,7 +476,7 @@ public class WebSocketConnectionTest {
     final List<OutgoingMessageEntity> messages = List.of(createMessage(1L, false, "senderE164", senderUuid, 1111L, false, "message the first"));
     final OutgoingMessageEntityList firstPage = new OutgoingMessageEntityList(messages, false);
 
-    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false)).thenReturn(firstPage);
+    when(messagesManager.getMessagesForDevice(account.getNumber(), account.getUuid(), 1L, client.getUserAgent(), false, Optional.empty())).thenReturn(firstPage);
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
@@ -510,7 +514,7 @@ public class WebSocketConnectionTest {
   @Test
   public void testProcessStoredMessagesSingleEmptyCall() {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     final UUID accountUuid = UUID.randomUUID();
@@ -520,7 +524,7 @@ public class WebSocketConnectionTest {
     when(device.getId()).thenReturn(1L);
     when(client.getUserAgent()).thenReturn("Test-UA");
 
-    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean()))
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
             .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -536,10 +540,135 @@ public class WebSocketConnectionTest {
     verify(client, times(1)).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
 
+  @Test
+  public void testStoredMessagesPausedByOutboundWindow() {
+    final MessagesManager     messagesManager = mock(MessagesManager.class);
+    final WebSocketClient     client          = mockWebSocketClient();
+    final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
+
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(1L);
+    when(client.getUserAgent()).thenReturn("Test-UA");
+
+    final List<OutgoingMessageEntity> messages = List.of(createMessage(1L, false, "sender1", UUID.randomUUID(), 1111, false, "first"),
+                                                         createMessage(2L, false, "sender1", UUID.randomUUID(), 2222, false, "second"));
+
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
+        .thenReturn(new OutgoingMessageEntityList(messages, false));
+
+    final CompletableFuture<Void> windowAvailable = new CompletableFuture<>();
+
+    when(client.whenWritable()).thenReturn(CompletableFuture.completedFuture(null), windowAvailable);
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+        .thenReturn(new CompletableFuture<>());
+
+    connection.processStoredMessages();
+
+    verify(client, times(1)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+
+    windowAvailable.complete(null);
+
+    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+  }
+
+  @Test
+  public void testPersistedPagePrefetchedBeforeAcknowledgement() {
+    final MessagesManager     messagesManager = mock(MessagesManager.class);
+    final WebSocketClient     client          = mockWebSocketClient();
+    final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
+
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(1L);
+    when(client.getUserAgent()).thenReturn("Test-UA");
+
+    final List<OutgoingMessageEntity> firstPageMessages =
+        List.of(createMessage(1L, false, "sender1", UUID.randomUUID(), 1111, false, "first"),
+                createMessage(2L, false, "sender1", UUID.randomUUID(), 2222, false, "second"));
+
+    final List<OutgoingMessageEntity> secondPageMessages =
+        List.of(createMessage(3L, false, "sender1", UUID.randomUUID(), 3333, false, "third"));
+
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
+        .thenReturn(new OutgoingMessageEntityList(firstPageMessages, true))
+        .thenReturn(new OutgoingMessageEntityList(secondPageMessages, false));
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    final List<CompletableFuture<WebSocketResponseMessage>> responses = new LinkedList<>();
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class))).thenAnswer(invocation -> {
+      final CompletableFuture<WebSocketResponseMessage> response = new CompletableFuture<>();
+      responses.add(response);
+
+      return response;
+    });
+
+    connection.processStoredMessages();
+
+    // The second page is fetched and sent while the first is still waiting for acknowledgements
+    verify(messagesManager, times(2)).getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any());
+    verify(client, times(3)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+    verify(messagesManager, never()).delete(anyString(), any(UUID.class), anyLong(), any(List.class));
+
+    responses.forEach(response -> response.complete(successResponse));
+
+    verify(messagesManager).delete(eq("+18005551234"), eq(accountUuid), eq(1L), eq(firstPageMessages));
+    verify(messagesManager).delete(eq("+18005551234"), eq(accountUuid), eq(1L), eq(secondPageMessages));
+    verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
+  }
+
+  @Test
+  public void testStoredMessagesLimitedByInFlightWindow() {
+    final MessagesManager              messagesManager              = mock(MessagesManager.class);
+    final WebSocketClient              client                       = mockWebSocketClient();
+    final MessageDeliveryConfiguration messageDeliveryConfiguration = mock(MessageDeliveryConfiguration.class);
+
+    when(messageDeliveryConfiguration.getMaxInFlightMessages(any())).thenReturn(1);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, account, device, client, messageDeliveryConfiguration);
+
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(1L);
+    when(client.getUserAgent()).thenReturn("Test-UA");
+
+    final List<OutgoingMessageEntity> messages = List.of(createMessage(1L, false, "sender1", UUID.randomUUID(), 1111, false, "first"),
+                                                         createMessage(2L, false, "sender1", UUID.randomUUID(), 2222, false, "second"));
+
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
+        .thenReturn(new OutgoingMessageEntityList(messages, false));
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    final CompletableFuture<WebSocketResponseMessage> firstResponse = new CompletableFuture<>();
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+        .thenReturn(firstResponse)
+        .thenReturn(new CompletableFuture<>());
+
+    connection.processStoredMessages();
+
+    verify(client, times(1)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+
+    firstResponse.complete(successResponse);
+
+    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+  }
+
   @Test(timeout = 5000L)
   public void testRequeryOnStateMismatch() throws InterruptedException {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
     final UUID                accountUuid     = UUID.randomUUID();
 
@@ -558,7 +687,7 @@ public class WebSocketConnectionTest {
     final OutgoingMessageEntityList firstPage  = new OutgoingMessageEntityList(firstPageMessages, false);
     final OutgoingMessageEntityList secondPage = new OutgoingMessageEntityList(secondPageMessages, false);
 
-    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean()))
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
             .thenReturn(firstPage)
             .thenReturn(secondPage)
             .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false));
@@ -575,7 +704,7 @@ public class WebSocketConnectionTest {
       return CompletableFuture.completedFuture(successResponse);
     });
 
-    connection.processStoredMessages();
+    connection.start();
 
     sendLatch.await();
 
@@ -586,7 +715,7 @@ public class WebSocketConnectionTest {
   @Test
   public void testProcessCachedMessagesOnly() {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     final UUID accountUuid = UUID.randomUUID();
@@ -596,7 +725,7 @@ public class WebSocketConnectionTest {
     when(device.getId()).thenReturn(1L);
     when(client.getUserAgent()).thenReturn("Test-UA");
 
-    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean()))
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
             .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -606,19 +735,19 @@ public class WebSocketConnectionTest {
     // CompletableFuture.allOf(...) in processStoredMessages will produce an instantly-succeeded future, and the
     // whenComplete method will get called immediately on THIS thread, so we don't need to synchronize or wait for
     // anything.
-    connection.processStoredMessages();
+    connection.start();
 
-    verify(messagesManager).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), false);
+    verify(messagesManager).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), false, Optional.empty());
 
     connection.handleNewMessagesAvailable();
 
-    verify(messagesManager).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), true);
+    verify(messagesManager).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), true, Optional.empty());
   }
 
   @Test
   public void testProcessDatabaseMessagesAfterPersist() {
     final MessagesManager     messagesManager = mock(MessagesManager.class);
-    final WebSocketClient     client          = mock(WebSocketClient.class);
+    final WebSocketClient     client          = mockWebSocketClient();
     final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
 
     final UUID accountUuid = UUID.randomUUID();
@@ -628,7 +757,7 @@ public class WebSocketConnectionTest {
     when(device.getId()).thenReturn(1L);
     when(client.getUserAgent()).thenReturn("Test-UA");
 
-    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean()))
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
             .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -638,10 +767,36 @@ public class WebSocketConnectionTest {
     // CompletableFuture.allOf(...) in processStoredMessages will produce an instantly-succeeded future, and the
     // whenComplete method will get called immediately on THIS thread, so we don't need to synchronize or wait for
     // anything.
-    connection.processStoredMessages();
+    connection.start();
+    connection.handleMessagesPersisted();
+
+    verify(messagesManager, times(2)).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), false, Optional.empty());
+  }
+
+  @Test
+  public void testNotificationsBeforeStartDeferred() {
+    final MessagesManager     messagesManager = mock(MessagesManager.class);
+    final WebSocketClient     client          = mockWebSocketClient();
+    final WebSocketConnection connection      = new WebSocketConnection(receiptSender, messagesManager, account, device, client);
+
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(1L);
+    when(client.getUserAgent()).thenReturn("Test-UA");
+
+    when(messagesManager.getMessagesForDevice(eq("+18005551234"), eq(accountUuid), eq(1L), eq("Test-UA"), anyBoolean(), any()))
+            .thenReturn(new OutgoingMessageEntityList(Collections.emptyList(), false));
+
+    connection.handleNewMessagesAvailable();
     connection.handleMessagesPersisted();
 
-    verify(messagesManager, times(2)).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), false);
+    verify(messagesManager, never()).getMessagesForDevice(any(), any(), anyLong(), any(), anyBoolean(), any());
+
+    connection.start();
+
+    verify(messagesManager).getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), client.getUserAgent(), false, Optional.empty());
   }
 
   @Test
@@ -681,11 +836,11 @@ public class WebSocketConnectionTest {
 
     String userAgent = "Signal-Desktop/1.2.3";
 
-    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false))
+    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false, Optional.empty()))
             .thenReturn(outgoingMessagesList);
 
     final List<CompletableFuture<WebSocketResponseMessage>> futures = new LinkedList<>();
-    final WebSocketClient                                   client  = mock(WebSocketClient.class);
+    final WebSocketClient                                   client  = mockWebSocketClient();
 
     when(client.getUserAgent()).thenReturn(userAgent);
     when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), ArgumentMatchers.nullable(List.class), ArgumentMatchers.<Optional<byte[]>>any()))
@@ -712,7 +867,8 @@ public class WebSocketConnectionTest {
 
     // We should delete all three messages even though we only sent two; one got discarded because it was too big for
     // desktop clients.
-    verify(storedMessages, times(3)).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), anyLong(), anyBoolean());
+    verify(storedMessages).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), argThat((List<OutgoingMessageEntity> messages) ->
+        messages.size() == outgoingMessages.size() && messages.containsAll(outgoingMessages)));
 
     connection.stop();
     verify(client).close(anyInt(), anyString());
@@ -755,11 +911,11 @@ public class WebSocketConnectionTest {
 
     String userAgent = "Signal-Android/4.68.3";
 
-    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false))
+    when(storedMessages.getMessagesForDevice(account.getNumber(), account.getUuid(), device.getId(), userAgent, false, Optional.empty()))
             .thenReturn(outgoingMessagesList);
 
     final List<CompletableFuture<WebSocketResponseMessage>> futures = new LinkedList<>();
-    final WebSocketClient                                   client  = mock(WebSocketClient.class);
+    final WebSocketClient                                   client  = mockWebSocketClient();
 
     when(client.getUserAgent()).thenReturn(userAgent);
     when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), ArgumentMatchers.nullable(List.class), ArgumentMatchers.<Optional<byte[]>>any()))
@@ -785,7 +941,8 @@ public class WebSocketConnectionTest {
     futures.get(1).complete(response);
     futures.get(2).complete(response);
 
-    verify(storedMessages, times(3)).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), anyLong(), anyBoolean());
+    verify(storedMessages).delete(eq(account.getNumber()), eq(accountUuid), eq(2L), argThat((List<OutgoingMessageEntity> messages) ->
+        messages.size() == outgoingMessages.size() && messages.containsAll(outgoingMessages)));
 
     connection.stop();
     verify(client).close(anyInt(), anyString());
@@ -796,4 +953,11 @@ public class WebSocketConnectionTest {
                                      null, timestamp, sender, senderUuid, 1, content.getBytes(), null, 0);
   }
 
+
+  private static WebSocketClient mockWebSocketClient() {
+    final WebSocketClient client = mock(WebSocketClient.class);
+    when(client.whenWritable()).thenReturn(CompletableFuture.completedFuture(null));
+
+    return client;
+  }
 }
@@ -10,16 +10,18 @@ import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.whispersystems.websocket.messages.WebSocketMessage;
 import org.whispersystems.websocket.messages.WebSocketMessageFactory;
 import org.whispersystems.websocket.messages.WebSocketResponseMessage;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
@@ -27,23 +29,50 @@ public class WebSocketClient {
 
   private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
 
+  public static final int  DEFAULT_MAX_OUTSTANDING_REQUESTS = 256;
+  public static final long DEFAULT_MAX_OUTSTANDING_BYTES    = 4 * 1024 * 1024;
+
   private final Session                                                session;
   private final RemoteEndpoint                                         remoteEndpoint;
   private final WebSocketMessageFactory                                messageFactory;
   private final Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper;
   private final long                                                   created;
 
+  // Requests that have been written but not yet answered make up the outbound window; anything past it waits in
+  // queuedRequests, so a slow client can't make us buffer an unbounded number of frames in the session.
+  private final int                           maxOutstandingRequests;
+  private final long                          maxOutstandingBytes;
+  private final Queue<QueuedRequest>          queuedRequests  = new ArrayDeque<>();
+  private final List<CompletableFuture<Void>> writableFutures = new ArrayList<>();
+  private       int                           outstandingRequests;
+  private       long                          outstandingBytes;
+
   public WebSocketClient(Session session, RemoteEndpoint remoteEndpoint,
                          WebSocketMessageFactory messageFactory,
                          Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper)
   {
-    this.session              = session;
-    this.remoteEndpoint       = remoteEndpoint;
-    this.messageFactory       = messageFactory;
-    this.pendingRequestMapper = pendingRequestMapper;
-    this.created              = System.currentTimeMillis();
+    this(session, remoteEndpoint, messageFactory, pendingRequestMapper, DEFAULT_MAX_OUTSTANDING_REQUESTS, DEFAULT_MAX_OUTSTANDING_BYTES);
+  }
+
+  public WebSocketClient(Session session, RemoteEndpoint remoteEndpoint,
+                         WebSocketMessageFactory messageFactory,
+                         Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper,
+                         int maxOutstandingRequests,
+                         long maxOutstandingBytes)
+  {
+    this.session                = session;
+    this.remoteEndpoint         = remoteEndpoint;
+    this.messageFactory         = messageFactory;
+    this.pendingRequestMapper   = pendingRequestMapper;
+    this.created                = System.currentTimeMillis();
+    this.maxOutstandingRequests = maxOutstandingRequests;
+    this.maxOutstandingBytes    = maxOutstandingBytes;
   }
 
+  /**
+   * Sends a request to the client. If the outbound window is full, the request is queued and written once earlier
+   * requests have been answered.
+   */
   public CompletableFuture<WebSocketResponseMessage> sendRequest(String verb, String path,
                                                                  List<String> headers,
                                                                  Optional<byte[]> body)
@@ -53,10 +82,57 @@ public class WebSocketClient {
 
     pendingRequestMapper.put(requestId, future);
 
-    WebSocketMessage requestMessage = messageFactory.createRequest(Optional.of(requestId), verb, path, headers, body);
+    final byte[]  requestBytes = messageFactory.createRequest(Optional.of(requestId), verb, path, headers, body).toByteArray();
+    final boolean sendNow;
+
+    synchronized (this) {
+      sendNow = queuedRequests.isEmpty() && hasCapacity();
+
+      if (sendNow) {
+        acquire(requestBytes.length);
+      } else {
+        queuedRequests.add(new QueuedRequest(requestId, requestBytes, future));
+      }
+    }
+
+    if (sendNow) {
+      write(requestId, requestBytes, future);
+    }
+
+    return future;
+  }
+
+  /**
+   * @return a future that completes once the outbound window has room and nothing is queued behind it
+   */
+  public synchronized CompletableFuture<Void> whenWritable() {
+    if (queuedRequests.isEmpty() && hasCapacity()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    CompletableFuture<Void> writableFuture = new CompletableFuture<>();
+    writableFutures.add(writableFuture);
+
+    return writableFuture;
+  }
+
+  public synchronized int getQueuedRequestCount() {
+    return queuedRequests.size();
+  }
+
+  public synchronized int getOutstandingRequestCount() {
+    return outstandingRequests;
+  }
+
+  public synchronized long getOutstandingBytes() {
+    return outstandingBytes;
+  }
+
+  private void write(long requestId, byte[] requestBytes, CompletableFuture<WebSocketResponseMessage> future) {
+    future.whenComplete((response, cause) -> release(requestBytes.length));
 
     try {
-      remoteEndpoint.sendBytes(ByteBuffer.wrap(requestMessage.toByteArray()), new WriteCallback() {
+      remoteEndpoint.sendBytes(ByteBuffer.wrap(requestBytes), new WriteCallback() {
         @Override
         public void writeFailed(Throwable x) {
           logger.debug("Write failed", x);
@@ -72,8 +148,6 @@ public class WebSocketClient {
       pendingRequestMapper.remove(requestId);
       future.completeExceptionally(e);
     }
-
-    return future;
   }
 
   public String getUserAgent() {
@@ -96,8 +170,62 @@ public class WebSocketClient {
     }
   }
 
+  private boolean hasCapacity() {
+    // A single request larger than the byte window is still allowed through on its own
+    return outstandingRequests == 0 || (outstandingRequests < maxOutstandingRequests && outstandingBytes < maxOutstandingBytes);
+  }
+
+  private void acquire(int length) {
+    outstandingRequests++;
+    outstandingBytes += length;
+  }
+
+  private void release(int length) {
+    final List<QueuedRequest>           sendable = new ArrayList<>();
+    final List<CompletableFuture<Void>> writable;
+
+    synchronized (this) {
+      outstandingRequests--;
+      outstandingBytes -= length;
+
+      while (!queuedRequests.isEmpty() && hasCapacity()) {
+        QueuedRequest queuedRequest = queuedRequests.remove();
+
+        // Requests failed while they were queued (e.g. because the connection closed) are never written
+        if (!queuedRequest.future.isDone()) {
+          acquire(queuedRequest.requestBytes.length);
+          sendable.add(queuedRequest);
+        }
+      }
+
+      if (queuedRequests.isEmpty() && hasCapacity() && !writableFutures.isEmpty()) {
+        writable = new ArrayList<>(writableFutures);
+        writableFutures.clear();
+      } else {
+        writable = List.of();
+      }
+    }
+
+    for (QueuedRequest queuedRequest : sendable) {
+      write(queuedRequest.requestId, queuedRequest.requestBytes, queuedRequest.future);
+    }
+
+    writable.forEach(future -> future.complete(null));
+  }
+
   private long generateRequestId() {
     return Math.abs(new SecureRandom().nextLong());
   }
 
+  private static class QueuedRequest {
+    private final long                                        requestId;
+    private final byte[]                                      requestBytes;
+    private final CompletableFuture<WebSocketResponseMessage> future;
+
+    private QueuedRequest(long requestId, byte[] requestBytes, CompletableFuture<WebSocketResponseMessage> future) {
+      this.requestId    = requestId;
+      this.requestBytes = requestBytes;
+      this.future       = future;
+    }
+  }
 }
@@ -55,6 +55,8 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   private final WebsocketRequestLog                requestLog;
   private final long                               idleTimeoutMillis;
   private final String                             remoteAddress;
+  private final int                                maxOutstandingRequests;
+  private final long                               maxOutstandingBytes;
 
   private Session                 session;
   private RemoteEndpoint          remoteEndpoint;
@@ -69,13 +71,29 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
                                    Optional<WebSocketConnectListener> connectListener,
                                    long                               idleTimeoutMillis)
   {
-    this.remoteAddress     = remoteAddress;
-    this.jerseyHandler     = jerseyHandler;
-    this.requestLog        = requestLog;
-    this.authenticated     = authenticated;
-    this.messageFactory    = messageFactory;
-    this.connectListener   = connectListener;
-    this.idleTimeoutMillis = idleTimeoutMillis;
+    this(remoteAddress, jerseyHandler, requestLog, authenticated, messageFactory, connectListener, idleTimeoutMillis,
+         WebSocketClient.DEFAULT_MAX_OUTSTANDING_REQUESTS, WebSocketClient.DEFAULT_MAX_OUTSTANDING_BYTES);
+  }
+
+  public WebSocketResourceProvider(String                             remoteAddress,
+                                   ApplicationHandler                 jerseyHandler,
+                                   WebsocketRequestLog                requestLog,
+                                   T                                  authenticated,
+                                   WebSocketMessageFactory            messageFactory,
+                                   Optional<WebSocketConnectListener> connectListener,
+                                   long                               idleTimeoutMillis,
+                                   int                                maxOutstandingRequests,
+                                   long                               maxOutstandingBytes)
+  {
+    this.remoteAddress          = remoteAddress;
+    this.jerseyHandler          = jerseyHandler;
+    this.requestLog             = requestLog;
+    this.authenticated          = authenticated;
+    this.messageFactory         = messageFactory;
+    this.connectListener        = connectListener;
+    this.idleTimeoutMillis      = idleTimeoutMillis;
+    this.maxOutstandingRequests = maxOutstandingRequests;
+    this.maxOutstandingBytes    = maxOutstandingBytes;
   }
 
   @Override
@@ -83,7 +101,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     this.session        = session;
     this.userAgent      = session.getUpgradeRequest().getHeader("User-Agent");
     this.remoteEndpoint = session.getRemote();
-    this.context        = new WebSocketSessionContext(new WebSocketClient(session, remoteEndpoint, messageFactory, requestMap));
+    this.context        = new WebSocketSessionContext(new WebSocketClient(session, remoteEndpoint, messageFactory, requestMap, maxOutstandingRequests, maxOutstandingBytes));
     this.context.setAuthenticated(authenticated);
     this.session.setIdleTimeout(idleTimeoutMillis);
 
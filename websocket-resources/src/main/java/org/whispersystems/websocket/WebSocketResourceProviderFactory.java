@@ -67,7 +67,9 @@ public class WebSocketResourceProviderFactory<T extends Principal> extends WebSo
                                               authenticated,
                                               this.environment.getMessageFactory(),
                                               ofNullable(this.environment.getConnectListener()),
-                                              this.environment.getIdleTimeoutMillis());
+                                              this.environment.getIdleTimeoutMillis(),
+                                              this.environment.getMaxOutstandingRequests(),
+                                              this.environment.getMaxOutstandingBytes());
     } catch (AuthenticationException | IOException e) {
       logger.warn("Authentication failure", e);
       try {
@@ -5,9 +5,11 @@
 package org.whispersystems.websocket.configuration;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.whispersystems.websocket.WebSocketClient;
 import org.whispersystems.websocket.logging.WebsocketRequestLoggerFactory;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 public class WebSocketConfiguration {
@@ -17,7 +19,29 @@ public class WebSocketConfiguration {
   @JsonProperty
   private WebsocketRequestLoggerFactory requestLog = new WebsocketRequestLoggerFactory();
 
+  /**
+   * The number of requests to a client that may be awaiting a response before further requests are queued.
+   */
+  @Min(1)
+  @JsonProperty
+  private int maxOutstandingRequests = WebSocketClient.DEFAULT_MAX_OUTSTANDING_REQUESTS;
+
+  /**
+   * The number of request bytes to a client that may be awaiting a response before further requests are queued.
+   */
+  @Min(1)
+  @JsonProperty
+  private long maxOutstandingBytes = WebSocketClient.DEFAULT_MAX_OUTSTANDING_BYTES;
+
   public WebsocketRequestLoggerFactory getRequestLog() {
     return requestLog;
   }
+
+  public int getMaxOutstandingRequests() {
+    return maxOutstandingRequests;
+  }
+
+  public long getMaxOutstandingBytes() {
+    return maxOutstandingBytes;
+  }
 }
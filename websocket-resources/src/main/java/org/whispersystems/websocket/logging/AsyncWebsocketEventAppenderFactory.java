@@ -5,9 +5,17 @@
 package org.whispersystems.websocket.logging;
 
 import ch.qos.logback.core.AsyncAppenderBase;
+import com.codahale.metrics.Meter;
 import io.dropwizard.logging.async.AsyncAppenderFactory;
 
 public class AsyncWebsocketEventAppenderFactory implements AsyncAppenderFactory<WebsocketEvent> {
+
+  private final Meter droppedMeter;
+
+  public AsyncWebsocketEventAppenderFactory(Meter droppedMeter) {
+    this.droppedMeter = droppedMeter;
+  }
+
   @Override
   public AsyncAppenderBase<WebsocketEvent> build() {
     return new AsyncAppenderBase<WebsocketEvent>() {
@@ -15,6 +23,14 @@ public class AsyncWebsocketEventAppenderFactory implements AsyncAppenderFactory<
       protected void preprocess(WebsocketEvent event) {
         event.prepareForDeferredProcessing();
       }
+
+      // Only consulted once the queue has less than the discarding threshold left. Dropping request log events there,
+      // rather than blocking until the appender catches up, keeps a slow log destination from stalling requests.
+      @Override
+      protected boolean isDiscardable(WebsocketEvent event) {
+        droppedMeter.mark();
+        return true;
+      }
     };
   }
 }
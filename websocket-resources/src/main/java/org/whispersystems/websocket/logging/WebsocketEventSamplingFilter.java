@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket.logging;
+
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import com.codahale.metrics.Meter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs only a fraction of websocket requests. The rate for an event comes from its exact status code if one is
+ * configured, then its status class (e.g. "5xx"), then the longest configured prefix of its path, then the default.
+ * Events are sampled on the request thread before they're queued, so a sampled-out request costs almost nothing.
+ */
+public class WebsocketEventSamplingFilter extends Filter<WebsocketEvent> {
+
+  private final double               defaultSampleRate;
+  private final Map<Integer, Double> statusSampleRates      = new HashMap<>();
+  private final double[]             statusClassSampleRates = new double[6];
+  private final List<PathSampleRate> pathSampleRates        = new ArrayList<>();
+  private final Meter                sampledOutMeter;
+
+  public WebsocketEventSamplingFilter(double defaultSampleRate,
+                                      Map<String, Double> statusSampleRates,
+                                      Map<String, Double> pathSampleRates,
+                                      Meter sampledOutMeter)
+  {
+    this.defaultSampleRate = defaultSampleRate;
+    this.sampledOutMeter   = sampledOutMeter;
+
+    Arrays.fill(statusClassSampleRates, Double.NaN);
+
+    for (Map.Entry<String, Double> entry : statusSampleRates.entrySet()) {
+      String status = entry.getKey().toLowerCase();
+
+      validateSampleRate(entry.getKey(), entry.getValue());
+
+      if (status.matches("[1-5]xx")) {
+        statusClassSampleRates[status.charAt(0) - '0'] = entry.getValue();
+      } else if (status.matches("[1-5][0-9][0-9]")) {
+        this.statusSampleRates.put(Integer.parseInt(status), entry.getValue());
+      } else {
+        throw new IllegalArgumentException("Invalid status for sampling: " + entry.getKey());
+      }
+    }
+
+    for (Map.Entry<String, Double> entry : pathSampleRates.entrySet()) {
+      validateSampleRate(entry.getKey(), entry.getValue());
+      this.pathSampleRates.add(new PathSampleRate(entry.getKey(), entry.getValue()));
+    }
+
+    this.pathSampleRates.sort(Comparator.comparingInt((PathSampleRate rate) -> rate.prefix.length()).reversed());
+  }
+
+  @Override
+  public FilterReply decide(WebsocketEvent event) {
+    double sampleRate = getSampleRate(event);
+
+    if (sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+      return FilterReply.NEUTRAL;
+    }
+
+    sampledOutMeter.mark();
+    return FilterReply.DENY;
+  }
+
+  private double getSampleRate(WebsocketEvent event) {
+    int    statusCode = event.getStatusCode();
+    Double statusRate = statusSampleRates.get(statusCode);
+
+    if (statusRate != null) {
+      return statusRate;
+    }
+
+    if (statusCode >= 100 && statusCode < 600 && !Double.isNaN(statusClassSampleRates[statusCode / 100])) {
+      return statusClassSampleRates[statusCode / 100];
+    }
+
+    if (!pathSampleRates.isEmpty()) {
+      String path = event.getPath();
+
+      for (PathSampleRate pathSampleRate : pathSampleRates) {
+        if (path.startsWith(pathSampleRate.prefix)) {
+          return pathSampleRate.sampleRate;
+        }
+      }
+    }
+
+    return defaultSampleRate;
+  }
+
+  private static void validateSampleRate(String key, Double sampleRate) {
+    if (sampleRate == null || !(sampleRate >= 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException("Invalid sample rate for " + key + ": " + sampleRate);
+    }
+  }
+
+  private static class PathSampleRate {
+    private final String prefix;
+    private final double sampleRate;
+
+    private PathSampleRate(String prefix, double sampleRate) {
+      this.prefix     = prefix;
+      this.sampleRate = sampleRate;
+    }
+  }
+}
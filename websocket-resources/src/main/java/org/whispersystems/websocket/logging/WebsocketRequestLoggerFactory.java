@@ -4,14 +4,18 @@
  */
 package org.whispersystems.websocket.logging;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.websocket.logging.layout.WebsocketEventLayoutFactory;
 
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.NotNull;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
@@ -22,6 +26,8 @@ import io.dropwizard.logging.filter.LevelFilterFactory;
 import io.dropwizard.logging.filter.NullLevelFilterFactory;
 import io.dropwizard.logging.layout.LayoutFactory;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class WebsocketRequestLoggerFactory {
 
   @VisibleForTesting
@@ -29,20 +35,51 @@ public class WebsocketRequestLoggerFactory {
   @NotNull
   public List<AppenderFactory<WebsocketEvent>> appenders = Collections.singletonList(new ConsoleAppenderFactory<>());
 
+  /**
+   * The fraction of requests to log when no status or path sample rate applies.
+   */
+  @VisibleForTesting
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  public double sampleRate = 1.0;
+
+  /**
+   * Sample rates by exact status code (e.g. "404") or status class (e.g. "2xx"); these take precedence over path rates.
+   */
+  @VisibleForTesting
+  @NotNull
+  public Map<String, Double> statusSampleRates = Collections.emptyMap();
+
+  /**
+   * Sample rates by request path prefix (e.g. "/v1/messages"); the longest matching prefix applies.
+   */
+  @VisibleForTesting
+  @NotNull
+  public Map<String, Double> pathSampleRates = Collections.emptyMap();
+
   public WebsocketRequestLog build(String name) {
+    return build(name, new MetricRegistry());
+  }
+
+  public WebsocketRequestLog build(String name, MetricRegistry metricRegistry) {
     final Logger logger = (Logger) LoggerFactory.getLogger("websocket.request");
     logger.setAdditive(false);
 
     final LoggerContext                        context              = logger.getLoggerContext();
     final WebsocketRequestLog                  requestLog           = new WebsocketRequestLog();
     final LevelFilterFactory<WebsocketEvent>   levelFilterFactory   = new NullLevelFilterFactory<>();
-    final AsyncAppenderFactory<WebsocketEvent> asyncAppenderFactory = new AsyncWebsocketEventAppenderFactory();
+    final AsyncAppenderFactory<WebsocketEvent> asyncAppenderFactory = new AsyncWebsocketEventAppenderFactory(metricRegistry.meter(name(WebsocketRequestLog.class, name, "dropped")));
     final LayoutFactory<WebsocketEvent>        layoutFactory        = new WebsocketEventLayoutFactory();
 
     for (AppenderFactory<WebsocketEvent> output : appenders) {
       requestLog.addAppender(output.build(context, name, layoutFactory, levelFilterFactory, asyncAppenderFactory));
     }
 
+    if (sampleRate < 1 || !statusSampleRates.isEmpty() || !pathSampleRates.isEmpty()) {
+      requestLog.addFilter(new WebsocketEventSamplingFilter(sampleRate, statusSampleRates, pathSampleRates,
+                                                            metricRegistry.meter(name(WebsocketRequestLog.class, name, "sampledOut"))));
+    }
+
     return requestLog;
   }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket.messages.protobuf;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serializes outgoing {@link SubProtocol.WebSocketMessage} frames straight into an exactly-sized array, without
+ * building intermediate protobuf objects or copying bodies into {@link com.google.protobuf.ByteString}s. Fields are
+ * written in field number order, so the output is byte-for-byte what the generated serializer would produce.
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+class ProtobufWebSocketFrameEncoder {
+
+  private static final int MESSAGE_TYPE_FIELD     = SubProtocol.WebSocketMessage.TYPE_FIELD_NUMBER;
+  private static final int MESSAGE_REQUEST_FIELD  = SubProtocol.WebSocketMessage.REQUEST_FIELD_NUMBER;
+  private static final int MESSAGE_RESPONSE_FIELD = SubProtocol.WebSocketMessage.RESPONSE_FIELD_NUMBER;
+
+  private static final int REQUEST_VERB_FIELD    = SubProtocol.WebSocketRequestMessage.VERB_FIELD_NUMBER;
+  private static final int REQUEST_PATH_FIELD    = SubProtocol.WebSocketRequestMessage.PATH_FIELD_NUMBER;
+  private static final int REQUEST_BODY_FIELD    = SubProtocol.WebSocketRequestMessage.BODY_FIELD_NUMBER;
+  private static final int REQUEST_ID_FIELD      = SubProtocol.WebSocketRequestMessage.ID_FIELD_NUMBER;
+  private static final int REQUEST_HEADERS_FIELD = SubProtocol.WebSocketRequestMessage.HEADERS_FIELD_NUMBER;
+
+  private static final int RESPONSE_ID_FIELD      = SubProtocol.WebSocketResponseMessage.ID_FIELD_NUMBER;
+  private static final int RESPONSE_STATUS_FIELD  = SubProtocol.WebSocketResponseMessage.STATUS_FIELD_NUMBER;
+  private static final int RESPONSE_MESSAGE_FIELD = SubProtocol.WebSocketResponseMessage.MESSAGE_FIELD_NUMBER;
+  private static final int RESPONSE_BODY_FIELD    = SubProtocol.WebSocketResponseMessage.BODY_FIELD_NUMBER;
+  private static final int RESPONSE_HEADERS_FIELD = SubProtocol.WebSocketResponseMessage.HEADERS_FIELD_NUMBER;
+
+  private static final byte[][] NO_HEADERS = new byte[0][];
+
+  static byte[] encodeRequest(Optional<Long> requestId, String verb, String path, List<String> headers, Optional<byte[]> body) {
+    byte[]   verbBytes    = verb.getBytes(StandardCharsets.UTF_8);
+    byte[]   pathBytes    = path.getBytes(StandardCharsets.UTF_8);
+    byte[][] headerBytes  = encodeHeaders(headers);
+    int      requestSize  = CodedOutputStream.computeByteArraySize(REQUEST_VERB_FIELD, verbBytes) +
+                            CodedOutputStream.computeByteArraySize(REQUEST_PATH_FIELD, pathBytes) +
+                            computeHeadersSize(REQUEST_HEADERS_FIELD, headerBytes);
+
+    if (body.isPresent())      requestSize += CodedOutputStream.computeByteArraySize(REQUEST_BODY_FIELD, body.get());
+    if (requestId.isPresent()) requestSize += CodedOutputStream.computeUInt64Size(REQUEST_ID_FIELD, requestId.get());
+
+    byte[] frame = new byte[computeFrameSize(SubProtocol.WebSocketMessage.Type.REQUEST_VALUE, MESSAGE_REQUEST_FIELD, requestSize)];
+
+    try {
+      CodedOutputStream output = CodedOutputStream.newInstance(frame);
+      writeFrameHeader(output, SubProtocol.WebSocketMessage.Type.REQUEST_VALUE, MESSAGE_REQUEST_FIELD, requestSize);
+
+      output.writeByteArray(REQUEST_VERB_FIELD, verbBytes);
+      output.writeByteArray(REQUEST_PATH_FIELD, pathBytes);
+
+      if (body.isPresent())      output.writeByteArray(REQUEST_BODY_FIELD, body.get());
+      if (requestId.isPresent()) output.writeUInt64(REQUEST_ID_FIELD, requestId.get());
+
+      writeHeaders(output, REQUEST_HEADERS_FIELD, headerBytes);
+      output.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+
+    return frame;
+  }
+
+  static byte[] encodeResponse(long requestId, int status, String message, List<String> headers, Optional<byte[]> body) {
+    byte[]   messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    byte[][] headerBytes  = encodeHeaders(headers);
+    int      responseSize = CodedOutputStream.computeUInt64Size(RESPONSE_ID_FIELD, requestId) +
+                            CodedOutputStream.computeUInt32Size(RESPONSE_STATUS_FIELD, status) +
+                            CodedOutputStream.computeByteArraySize(RESPONSE_MESSAGE_FIELD, messageBytes) +
+                            computeHeadersSize(RESPONSE_HEADERS_FIELD, headerBytes);
+
+    if (body.isPresent()) responseSize += CodedOutputStream.computeByteArraySize(RESPONSE_BODY_FIELD, body.get());
+
+    byte[] frame = new byte[computeFrameSize(SubProtocol.WebSocketMessage.Type.RESPONSE_VALUE, MESSAGE_RESPONSE_FIELD, responseSize)];
+
+    try {
+      CodedOutputStream output = CodedOutputStream.newInstance(frame);
+      writeFrameHeader(output, SubProtocol.WebSocketMessage.Type.RESPONSE_VALUE, MESSAGE_RESPONSE_FIELD, responseSize);
+
+      output.writeUInt64(RESPONSE_ID_FIELD, requestId);
+      output.writeUInt32(RESPONSE_STATUS_FIELD, status);
+      output.writeByteArray(RESPONSE_MESSAGE_FIELD, messageBytes);
+
+      if (body.isPresent()) output.writeByteArray(RESPONSE_BODY_FIELD, body.get());
+
+      writeHeaders(output, RESPONSE_HEADERS_FIELD, headerBytes);
+      output.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+
+    return frame;
+  }
+
+  private static int computeFrameSize(int type, int field, int size) {
+    return CodedOutputStream.computeEnumSize(MESSAGE_TYPE_FIELD, type) +
+           CodedOutputStream.computeTagSize(field)                     +
+           CodedOutputStream.computeRawVarint32Size(size)              +
+           size;
+  }
+
+  private static void writeFrameHeader(CodedOutputStream output, int type, int field, int size) throws IOException {
+    output.writeEnum(MESSAGE_TYPE_FIELD, type);
+    output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeRawVarint32(size);
+  }
+
+  private static byte[][] encodeHeaders(List<String> headers) {
+    if (headers == null || headers.isEmpty()) {
+      return NO_HEADERS;
+    }
+
+    byte[][] encoded = new byte[headers.size()][];
+
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = headers.get(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    return encoded;
+  }
+
+  private static int computeHeadersSize(int field, byte[][] headers) {
+    int size = 0;
+
+    for (byte[] header : headers) {
+      size += CodedOutputStream.computeByteArraySize(field, header);
+    }
+
+    return size;
+  }
+
+  private static void writeHeaders(CodedOutputStream output, int field, byte[][] headers) throws IOException {
+    for (byte[] header : headers) {
+      output.writeByteArray(field, header);
+    }
+  }
+}
@@ -4,7 +4,6 @@
  */
 package org.whispersystems.websocket.messages.protobuf;
 
-import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
@@ -13,11 +12,14 @@ import org.whispersystems.websocket.messages.WebSocketResponseMessage;
 
 public class ProtobufWebSocketMessage implements WebSocketMessage {
 
-  private final SubProtocol.WebSocketMessage message;
+  // Messages we create are only ever serialized, so they're held in serialized form and parsed only if inspected
+  private final byte[]                       serialized;
+  private       SubProtocol.WebSocketMessage message;
 
   ProtobufWebSocketMessage(byte[] buffer, int offset, int length) throws InvalidMessageException {
     try {
-      this.message = SubProtocol.WebSocketMessage.parseFrom(ByteString.copyFrom(buffer, offset, length));
+      this.serialized = null;
+      this.message    = SubProtocol.WebSocketMessage.PARSER.parseFrom(buffer, offset, length);
 
       if (getType() == Type.REQUEST_MESSAGE) {
         if (!message.getRequest().hasVerb() || !message.getRequest().hasPath()) {
@@ -33,12 +35,14 @@ public class ProtobufWebSocketMessage implements WebSocketMessage {
     }
   }
 
-  ProtobufWebSocketMessage(SubProtocol.WebSocketMessage message) {
-    this.message = message;
+  ProtobufWebSocketMessage(byte[] serialized) {
+    this.serialized = serialized;
   }
 
   @Override
   public Type getType() {
+    SubProtocol.WebSocketMessage message = getMessage();
+
     if (message.getType().getNumber() == SubProtocol.WebSocketMessage.Type.REQUEST_VALUE &&
         message.hasRequest())
     {
@@ -54,16 +58,31 @@ public class ProtobufWebSocketMessage implements WebSocketMessage {
 
   @Override
   public WebSocketRequestMessage getRequestMessage() {
-    return new ProtobufWebSocketRequestMessage(message.getRequest());
+    return new ProtobufWebSocketRequestMessage(getMessage().getRequest());
   }
 
   @Override
   public WebSocketResponseMessage getResponseMessage() {
-    return new ProtobufWebSocketResponseMessage(message.getResponse());
+    return new ProtobufWebSocketResponseMessage(getMessage().getResponse());
   }
 
+  /**
+   * @return the serialized message; for messages created locally this is the encoded frame itself, not a copy
+   */
   @Override
   public byte[] toByteArray() {
-    return message.toByteArray();
+    return serialized != null ? serialized : message.toByteArray();
+  }
+
+  private SubProtocol.WebSocketMessage getMessage() {
+    if (message == null) {
+      try {
+        message = SubProtocol.WebSocketMessage.parseFrom(serialized);
+      } catch (InvalidProtocolBufferException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    return message;
   }
 }
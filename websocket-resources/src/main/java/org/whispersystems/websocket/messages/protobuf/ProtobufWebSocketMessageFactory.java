@@ -4,7 +4,6 @@
  */
 package org.whispersystems.websocket.messages.protobuf;
 
-import com.google.protobuf.ByteString;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
 import org.whispersystems.websocket.messages.WebSocketMessageFactory;
@@ -27,54 +26,11 @@ public class ProtobufWebSocketMessageFactory implements WebSocketMessageFactory
                                         List<String> headers,
                                         Optional<byte[]> body)
   {
-    SubProtocol.WebSocketRequestMessage.Builder requestMessage =
-        SubProtocol.WebSocketRequestMessage.newBuilder()
-                                           .setVerb(verb)
-                                           .setPath(path);
-
-    if (requestId.isPresent()) {
-      requestMessage.setId(requestId.get());
-    }
-
-    if (body.isPresent()) {
-      requestMessage.setBody(ByteString.copyFrom(body.get()));
-    }
-
-    if (headers != null) {
-      requestMessage.addAllHeaders(headers);
-    }
-
-    SubProtocol.WebSocketMessage message
-        = SubProtocol.WebSocketMessage.newBuilder()
-                                      .setType(SubProtocol.WebSocketMessage.Type.REQUEST)
-                                      .setRequest(requestMessage)
-                                      .build();
-
-    return new ProtobufWebSocketMessage(message);
+    return new ProtobufWebSocketMessage(ProtobufWebSocketFrameEncoder.encodeRequest(requestId, verb, path, headers, body));
   }
 
   @Override
   public WebSocketMessage createResponse(long requestId, int status, String messageString, List<String> headers, Optional<byte[]> body) {
-    SubProtocol.WebSocketResponseMessage.Builder responseMessage =
-        SubProtocol.WebSocketResponseMessage.newBuilder()
-                                            .setId(requestId)
-                                            .setStatus(status)
-                                            .setMessage(messageString);
-
-    if (body.isPresent()) {
-      responseMessage.setBody(ByteString.copyFrom(body.get()));
-    }
-
-    if (headers != null) {
-      responseMessage.addAllHeaders(headers);
-    }
-
-    SubProtocol.WebSocketMessage message =
-        SubProtocol.WebSocketMessage.newBuilder()
-                                    .setType(SubProtocol.WebSocketMessage.Type.RESPONSE)
-                                    .setResponse(responseMessage)
-                                    .build();
-
-    return new ProtobufWebSocketMessage(message);
+    return new ProtobufWebSocketMessage(ProtobufWebSocketFrameEncoder.encodeResponse(requestId, status, messageString, headers, body));
   }
 }
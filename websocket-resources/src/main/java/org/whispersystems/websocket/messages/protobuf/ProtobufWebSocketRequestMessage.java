@@ -6,14 +6,20 @@ package org.whispersystems.websocket.messages.protobuf;
 
 import org.whispersystems.websocket.messages.WebSocketRequestMessage;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class ProtobufWebSocketRequestMessage implements WebSocketRequestMessage {
 
   private final SubProtocol.WebSocketRequestMessage message;
 
+  // Parsed on first use and kept, since callers commonly ask for these more than once
+  private Optional<byte[]>    body;
+  private Map<String, String> headers;
+
   ProtobufWebSocketRequestMessage(SubProtocol.WebSocketRequestMessage message) {
     this.message = message;
   }
@@ -30,11 +36,11 @@ public class ProtobufWebSocketRequestMessage implements WebSocketRequestMessage
 
   @Override
   public Optional<byte[]> getBody() {
-    if (message.hasBody()) {
-      return Optional.of(message.getBody().toByteArray());
-    } else {
-      return Optional.empty();
+    if (body == null) {
+      body = message.hasBody() ? Optional.of(message.getBody().toByteArray()) : Optional.empty();
     }
+
+    return body;
   }
 
   @Override
@@ -49,6 +55,14 @@ public class ProtobufWebSocketRequestMessage implements WebSocketRequestMessage
 
   @Override
   public Map<String, String> getHeaders() {
+    if (headers == null) {
+      headers = Collections.unmodifiableMap(parseHeaders());
+    }
+
+    return headers;
+  }
+
+  private Map<String, String> parseHeaders() {
     Map<String, String> results = new HashMap<>();
 
     for (String header : message.getHeadersList()) {
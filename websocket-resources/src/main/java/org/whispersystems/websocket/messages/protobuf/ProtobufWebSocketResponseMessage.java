@@ -6,14 +6,20 @@ package org.whispersystems.websocket.messages.protobuf;
 
 import org.whispersystems.websocket.messages.WebSocketResponseMessage;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class ProtobufWebSocketResponseMessage implements WebSocketResponseMessage {
 
   private final SubProtocol.WebSocketResponseMessage message;
 
+  // Parsed on first use and kept, since callers commonly ask for these more than once
+  private Optional<byte[]>    body;
+  private Map<String, String> headers;
+
   public ProtobufWebSocketResponseMessage(SubProtocol.WebSocketResponseMessage message) {
     this.message = message;
   }
@@ -35,15 +41,23 @@ public class ProtobufWebSocketResponseMessage implements WebSocketResponseMessag
 
   @Override
   public Optional<byte[]> getBody() {
-    if (message.hasBody()) {
-      return Optional.of(message.getBody().toByteArray());
-    } else {
-      return Optional.empty();
+    if (body == null) {
+      body = message.hasBody() ? Optional.of(message.getBody().toByteArray()) : Optional.empty();
     }
+
+    return body;
   }
 
   @Override
   public Map<String, String> getHeaders() {
+    if (headers == null) {
+      headers = Collections.unmodifiableMap(parseHeaders());
+    }
+
+    return headers;
+  }
+
+  private Map<String, String> parseHeaders() {
     Map<String, String> results = new HashMap<>();
 
     for (String header : message.getHeadersList()) {
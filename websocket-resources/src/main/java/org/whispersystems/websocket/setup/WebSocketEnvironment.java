@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.jersey.DropwizardResourceConfig;
 import io.dropwizard.setup.Environment;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.whispersystems.websocket.WebSocketClient;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator;
 import org.whispersystems.websocket.configuration.WebSocketConfiguration;
 import org.whispersystems.websocket.logging.WebsocketRequestLog;
@@ -28,13 +29,16 @@ public class WebSocketEnvironment<T extends Principal> {
   private WebSocketAuthenticator<T> authenticator;
   private WebSocketMessageFactory   messageFactory;
   private WebSocketConnectListener  connectListener;
+  private int                       maxOutstandingRequests = WebSocketClient.DEFAULT_MAX_OUTSTANDING_REQUESTS;
+  private long                      maxOutstandingBytes    = WebSocketClient.DEFAULT_MAX_OUTSTANDING_BYTES;
 
   public WebSocketEnvironment(Environment environment, WebSocketConfiguration configuration) {
     this(environment, configuration, 60000);
   }
 
   public WebSocketEnvironment(Environment environment, WebSocketConfiguration configuration, long idleTimeoutMillis) {
-    this(environment, configuration.getRequestLog().build("websocket"), idleTimeoutMillis);
+    this(environment, configuration.getRequestLog().build("websocket", environment.metrics()), idleTimeoutMillis);
+    setOutboundWindow(configuration.getMaxOutstandingRequests(), configuration.getMaxOutstandingBytes());
   }
 
   public WebSocketEnvironment(Environment environment, WebsocketRequestLog requestLog, long idleTimeoutMillis) {
@@ -82,6 +86,19 @@ public class WebSocketEnvironment<T extends Principal> {
     this.messageFactory = messageFactory;
   }
 
+  public int getMaxOutstandingRequests() {
+    return maxOutstandingRequests;
+  }
+
+  public long getMaxOutstandingBytes() {
+    return maxOutstandingBytes;
+  }
+
+  public void setOutboundWindow(int maxOutstandingRequests, long maxOutstandingBytes) {
+    this.maxOutstandingRequests = maxOutstandingRequests;
+    this.maxOutstandingBytes    = maxOutstandingBytes;
+  }
+
   public WebSocketConnectListener getConnectListener() {
     return connectListener;
   }
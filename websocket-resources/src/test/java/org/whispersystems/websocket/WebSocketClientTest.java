@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+import org.whispersystems.websocket.messages.protobuf.ProtobufWebSocketMessageFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class WebSocketClientTest {
+
+  private RemoteEndpoint                                         remoteEndpoint;
+  private Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequests;
+  private WebSocketClient                                        client;
+
+  @Before
+  public void setUp() {
+    remoteEndpoint  = mock(RemoteEndpoint.class);
+    pendingRequests = new ConcurrentHashMap<>();
+    client          = new WebSocketClient(mock(Session.class), remoteEndpoint, new ProtobufWebSocketMessageFactory(), pendingRequests, 2, 1024);
+  }
+
+  @Test
+  public void testRequestsQueuedBeyondWindow() {
+    CompletableFuture<WebSocketResponseMessage> first  = send(10);
+    CompletableFuture<WebSocketResponseMessage> second = send(10);
+    CompletableFuture<WebSocketResponseMessage> third  = send(10);
+
+    verify(remoteEndpoint, times(2)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+    assertEquals(2, client.getOutstandingRequestCount());
+    assertEquals(1, client.getQueuedRequestCount());
+    assertFalse(client.whenWritable().isDone());
+
+    first.complete(mock(WebSocketResponseMessage.class));
+
+    verify(remoteEndpoint, times(3)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+    assertEquals(2, client.getOutstandingRequestCount());
+    assertEquals(0, client.getQueuedRequestCount());
+
+    CompletableFuture<Void> writable = client.whenWritable();
+    assertFalse(writable.isDone());
+
+    second.complete(mock(WebSocketResponseMessage.class));
+
+    assertTrue(writable.isDone());
+    assertEquals(1, client.getOutstandingRequestCount());
+
+    third.completeExceptionally(new IOException());
+
+    assertEquals(0, client.getOutstandingRequestCount());
+    assertEquals(0, client.getOutstandingBytes());
+  }
+
+  @Test
+  public void testByteWindow() {
+    CompletableFuture<WebSocketResponseMessage> first = send(2048);
+
+    // A request larger than the byte window still goes out on its own
+    verify(remoteEndpoint, times(1)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+    assertTrue(client.getOutstandingBytes() > 2048);
+
+    send(10);
+
+    verify(remoteEndpoint, times(1)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+    assertEquals(1, client.getQueuedRequestCount());
+
+    first.complete(mock(WebSocketResponseMessage.class));
+
+    verify(remoteEndpoint, times(2)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+  }
+
+  @Test
+  public void testQueuedRequestFailedBeforeSend() {
+    CompletableFuture<WebSocketResponseMessage> first  = send(10);
+    send(10);
+    CompletableFuture<WebSocketResponseMessage> queued = send(10);
+
+    // e.g. the connection closed and every pending request was failed
+    queued.completeExceptionally(new IOException("Connection closed!"));
+    first.completeExceptionally(new IOException("Connection closed!"));
+
+    verify(remoteEndpoint, times(2)).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+    assertEquals(1, client.getOutstandingRequestCount());
+    assertEquals(0, client.getQueuedRequestCount());
+  }
+
+  private CompletableFuture<WebSocketResponseMessage> send(int bodyLength) {
+    return client.sendRequest("PUT", "/api/v1/message", List.of(), Optional.of(new byte[bodyLength]));
+  }
+}
@@ -7,6 +7,7 @@ package org.whispersystems.websocket.logging;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.core.OutputStreamAppender;
 import ch.qos.logback.core.spi.DeferredProcessingAware;
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.logging.AbstractOutputStreamAppenderFactory;
 import org.glassfish.jersey.internal.MapPropertiesDelegate;
 import org.glassfish.jersey.server.ContainerRequest;
@@ -22,6 +23,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -75,6 +77,80 @@ public class WebSocketRequestLogTest {
     System.out.println(new String(listAppender.outputStream.toByteArray()));
   }
 
+  @Test
+  public void testSampledByStatus() throws InterruptedException {
+    ListAppender<WebsocketEvent>  listAppender         = new ListAppender<>();
+    WebsocketRequestLoggerFactory requestLoggerFactory = new WebsocketRequestLoggerFactory();
+    requestLoggerFactory.appenders         = List.of(new ListAppenderFactory<>(listAppender));
+    requestLoggerFactory.sampleRate        = 0.0;
+    requestLoggerFactory.statusSampleRates = Map.of("5xx", 1.0, "404", 1.0);
+
+    MetricRegistry      metricRegistry = new MetricRegistry();
+    WebsocketRequestLog requestLog     = requestLoggerFactory.build("test-logger", metricRegistry);
+
+    log(requestLog, "/v1/test", 200);
+    log(requestLog, "/v1/test", 404);
+    log(requestLog, "/v1/test", 403);
+    log(requestLog, "/v1/test", 503);
+
+    listAppender.waitForListSize(2);
+    assertThat(listAppender.list.size()).isEqualTo(2);
+    assertThat(listAppender.list.get(0).getStatusCode()).isEqualTo(404);
+    assertThat(listAppender.list.get(1).getStatusCode()).isEqualTo(503);
+    assertThat(metricRegistry.meter("org.whispersystems.websocket.logging.WebsocketRequestLog.test-logger.sampledOut").getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSampledByPath() throws InterruptedException {
+    ListAppender<WebsocketEvent>  listAppender         = new ListAppender<>();
+    WebsocketRequestLoggerFactory requestLoggerFactory = new WebsocketRequestLoggerFactory();
+    requestLoggerFactory.appenders         = List.of(new ListAppenderFactory<>(listAppender));
+    requestLoggerFactory.statusSampleRates = Map.of("500", 1.0);
+    requestLoggerFactory.pathSampleRates   = Map.of("/v1/messages", 0.0, "/v1/messages/important", 1.0);
+
+    WebsocketRequestLog requestLog = requestLoggerFactory.build("test-logger");
+
+    log(requestLog, "/v1/messages", 200);
+    log(requestLog, "/v1/messages/important", 200);
+    log(requestLog, "/v1/messages", 500);
+    log(requestLog, "/v1/keys", 200);
+
+    listAppender.waitForListSize(3);
+    assertThat(listAppender.list.size()).isEqualTo(3);
+    assertThat(listAppender.list.get(0).getPath()).isEqualTo("/v1/messages/important");
+    assertThat(listAppender.list.get(1).getStatusCode()).isEqualTo(500);
+    assertThat(listAppender.list.get(2).getPath()).isEqualTo("/v1/keys");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSampledStatus() {
+    WebsocketRequestLoggerFactory requestLoggerFactory = new WebsocketRequestLoggerFactory();
+    requestLoggerFactory.statusSampleRates = Map.of("2yy", 0.5);
+
+    requestLoggerFactory.build("test-logger");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidStatusSampleRate() {
+    WebsocketRequestLoggerFactory requestLoggerFactory = new WebsocketRequestLoggerFactory();
+    requestLoggerFactory.statusSampleRates = Map.of("5xx", 10.0);
+
+    requestLoggerFactory.build("test-logger");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPathSampleRate() {
+    WebsocketRequestLoggerFactory requestLoggerFactory = new WebsocketRequestLoggerFactory();
+    requestLoggerFactory.pathSampleRates = Map.of("/v1/keepalive", -0.5);
+
+    requestLoggerFactory.build("test-logger");
+  }
+
+  private static void log(WebsocketRequestLog requestLog, String path, int status) {
+    ContainerRequest request = new ContainerRequest(null, URI.create(path), "GET", new WebSocketSecurityContext(new ContextPrincipal(mock(WebSocketSessionContext.class))), new MapPropertiesDelegate(new HashMap<>()), null);
+
+    requestLog.log("123.456.789.123", request, new ContainerResponse(request, Response.status(status).build()));
+  }
 
   private static class ListAppenderFactory<T extends DeferredProcessingAware> extends AbstractOutputStreamAppenderFactory<T> {
     private final ListAppender<T> listAppender;
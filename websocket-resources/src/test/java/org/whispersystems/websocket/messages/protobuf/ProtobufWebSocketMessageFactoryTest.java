@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket.messages.protobuf;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.whispersystems.websocket.messages.InvalidMessageException;
+import org.whispersystems.websocket.messages.WebSocketMessage;
+import org.whispersystems.websocket.messages.WebSocketRequestMessage;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProtobufWebSocketMessageFactoryTest {
+
+  private final ProtobufWebSocketMessageFactory messageFactory = new ProtobufWebSocketMessageFactory();
+
+  @Test
+  public void testCreateRequestMatchesGeneratedEncoding() {
+    assertRequestEncoding(Optional.of(1234L), "PUT", "/api/v1/message", List.of("Content-Type:application/json", "X-Signal-Key: false"), Optional.of("hello".getBytes()));
+    assertRequestEncoding(Optional.of(Long.MAX_VALUE), "GET", "/v1/keepalive", null, Optional.empty());
+    assertRequestEncoding(Optional.empty(), "PUT", "/api/v1/queue/empty", List.of(), Optional.empty());
+    assertRequestEncoding(Optional.of(0L), "PUT", "/ünïcødé", List.of("X-Header:välue"), Optional.of(new byte[300]));
+  }
+
+  @Test
+  public void testCreateResponseMatchesGeneratedEncoding() {
+    assertResponseEncoding(1234L, 200, "OK", List.of("Content-Type:application/json"), Optional.of("{\"foo\":1}".getBytes()));
+    assertResponseEncoding(Long.MAX_VALUE, 404, "Not Found", null, Optional.empty());
+    assertResponseEncoding(0L, 500, "Error response", List.of(), Optional.of(new byte[100_000]));
+  }
+
+  @Test
+  public void testRequestRoundTrip() throws InvalidMessageException {
+    byte[] serialized = messageFactory.createRequest(Optional.of(42L), "PUT", "/api/v1/message", List.of("Content-Type:application/json"), Optional.of("hello".getBytes()))
+                                      .toByteArray();
+
+    byte[] framed = new byte[serialized.length + 10];
+    System.arraycopy(serialized, 0, framed, 5, serialized.length);
+
+    WebSocketMessage message = messageFactory.parseMessage(framed, 5, serialized.length);
+    assertEquals(WebSocketMessage.Type.REQUEST_MESSAGE, message.getType());
+
+    WebSocketRequestMessage request = message.getRequestMessage();
+    assertEquals("PUT", request.getVerb());
+    assertEquals("/api/v1/message", request.getPath());
+    assertTrue(request.hasRequestId());
+    assertEquals(42L, request.getRequestId());
+    assertEquals(Map.of("content-type", "application/json"), request.getHeaders());
+    assertArrayEquals("hello".getBytes(), request.getBody().get());
+    assertSame(request.getBody().get(), request.getBody().get());
+    assertArrayEquals(serialized, message.toByteArray());
+  }
+
+  @Test
+  public void testResponseRoundTrip() throws InvalidMessageException {
+    WebSocketMessage created = messageFactory.createResponse(42L, 200, "OK", null, Optional.empty());
+
+    assertEquals(WebSocketMessage.Type.RESPONSE_MESSAGE, created.getType());
+
+    byte[]           serialized = created.toByteArray();
+    WebSocketMessage message    = messageFactory.parseMessage(serialized, 0, serialized.length);
+
+    WebSocketResponseMessage response = message.getResponseMessage();
+    assertEquals(42L, response.getRequestId());
+    assertEquals(200, response.getStatus());
+    assertEquals("OK", response.getMessage());
+    assertTrue(response.getHeaders().isEmpty());
+    assertFalse(response.getBody().isPresent());
+  }
+
+  @Test(expected = InvalidMessageException.class)
+  public void testMissingRequestAttributes() throws InvalidMessageException {
+    byte[] serialized = SubProtocol.WebSocketMessage.newBuilder()
+                                                    .setType(SubProtocol.WebSocketMessage.Type.REQUEST)
+                                                    .setRequest(SubProtocol.WebSocketRequestMessage.newBuilder().setVerb("GET"))
+                                                    .build()
+                                                    .toByteArray();
+
+    messageFactory.parseMessage(serialized, 0, serialized.length);
+  }
+
+  @Test(expected = InvalidMessageException.class)
+  public void testGarbage() throws InvalidMessageException {
+    messageFactory.parseMessage(new byte[] {(byte)0xff, (byte)0xff, (byte)0xff}, 0, 3);
+  }
+
+  private void assertRequestEncoding(Optional<Long> requestId, String verb, String path, List<String> headers, Optional<byte[]> body) {
+    SubProtocol.WebSocketRequestMessage.Builder request = SubProtocol.WebSocketRequestMessage.newBuilder()
+                                                                                             .setVerb(verb)
+                                                                                             .setPath(path);
+
+    requestId.ifPresent(request::setId);
+    body.ifPresent(bytes -> request.setBody(ByteString.copyFrom(bytes)));
+    if (headers != null) request.addAllHeaders(headers);
+
+    byte[] expected = SubProtocol.WebSocketMessage.newBuilder()
+                                                  .setType(SubProtocol.WebSocketMessage.Type.REQUEST)
+                                                  .setRequest(request)
+                                                  .build()
+                                                  .toByteArray();
+
+    assertArrayEquals(expected, messageFactory.createRequest(requestId, verb, path, headers, body).toByteArray());
+  }
+
+  private void assertResponseEncoding(long requestId, int status, String message, List<String> headers, Optional<byte[]> body) {
+    SubProtocol.WebSocketResponseMessage.Builder response = SubProtocol.WebSocketResponseMessage.newBuilder()
+                                                                                                .setId(requestId)
+                                                                                                .setStatus(status)
+                                                                                                .setMessage(message);
+
+    body.ifPresent(bytes -> response.setBody(ByteString.copyFrom(bytes)));
+    if (headers != null) response.addAllHeaders(headers);
+
+    byte[] expected = SubProtocol.WebSocketMessage.newBuilder()
+                                                  .setType(SubProtocol.WebSocketMessage.Type.RESPONSE)
+                                                  .setResponse(response)
+                                                  .build()
+                                                  .toByteArray();
+
+    assertArrayEquals(expected, messageFactory.createResponse(requestId, status, message, headers, body).toByteArray());
+  }
+}